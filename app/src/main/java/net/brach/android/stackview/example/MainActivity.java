@@ -6,13 +6,18 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import net.brach.android.stackview.CardImageLoader;
 import net.brach.android.stackview.StackView;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
+    private ExecutorService executor;
+    private CardImageLoader imageLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -20,6 +25,8 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         StackView stack = (StackView) findViewById(R.id.stack);
+        executor = Executors.newSingleThreadExecutor();
+        imageLoader = new CardImageLoader(stack, executor, 16 * 1024 * 1024);
         stack.setAdapter(new StackAdapter(
                 R.drawable.cat_1,
                 R.drawable.cat_2,
@@ -28,6 +35,13 @@ public class MainActivity extends AppCompatActivity {
         ));
     }
 
+    @Override
+    protected void onDestroy() {
+        // the decoded images are not needed anymore
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+
     private class StackAdapter extends StackView.Adapter {
         private final ArrayList<Integer> pictures;
         private final Random random;
@@ -63,7 +77,7 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void onBindView(View view, Position position) {
-            ((ImageView) view.findViewById(R.id.img)).setImageResource(pictures.get(position.value));
+            imageLoader.load((ImageView) view.findViewById(R.id.img), position, pictures.get(position.value));
 
             view.findViewById(R.id.next).setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -0,0 +1,73 @@
+package net.brach.android.stackview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Release of the front card: classification and dismiss projection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GestureBenchmark {
+    private static final int SAMPLES = 1024;
+
+    private StackEngine engine;
+    private float[] dx, dy, vx, vy;
+    private int index;
+
+    @Setup
+    public void setup() {
+        engine = new StackEngine(200, 1200, 200, 3);
+
+        Random random = new Random(42);
+        dx = new float[SAMPLES];
+        dy = new float[SAMPLES];
+        vx = new float[SAMPLES];
+        vy = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            dx[i] = (random.nextFloat() - .5f) * 800;
+            dy[i] = (random.nextFloat() - .5f) * 400;
+            vx[i] = (random.nextFloat() - .5f) * 8000;
+            vy[i] = (random.nextFloat() - .5f) * 4000;
+        }
+    }
+
+    @Benchmark
+    public int classify() {
+        int i = next();
+        return engine.classify(dx[i], vx[i], vy[i]);
+    }
+
+    @Benchmark
+    public void classifyAndProject(Blackhole blackhole) {
+        int i = next();
+        int direction = engine.classify(dx[i], vx[i], vy[i]);
+        if (direction != 0) {
+            engine.project(direction, dx[i], dy[i], dx[i] * .9f, dy[i] * .9f, vx[i], vy[i], 1080);
+            blackhole.consume(engine.targetX);
+            blackhole.consume(engine.targetY);
+            blackhole.consume(engine.targetDuration);
+        }
+        blackhole.consume(direction);
+    }
+
+    @Benchmark
+    public boolean moveThreshold() {
+        return engine.isPastSwipe(dx[next()]);
+    }
+
+    private int next() {
+        index = (index + 1) & (SAMPLES - 1);
+        return index;
+    }
+}
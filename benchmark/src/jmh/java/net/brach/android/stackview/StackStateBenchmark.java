@@ -0,0 +1,76 @@
+package net.brach.android.stackview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dismiss sequencing (what is removed, shifted, bound and snapshot) and notification routing.
+ *
+ * Only the decisions are measured: the binds and the snapshots they trigger run on the views.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StackStateBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({"2", "5"})
+    public int depth;
+
+    private StackEngine engine;
+    private int[] positions;
+    private int index;
+
+    @Setup
+    public void setup() {
+        engine = new StackEngine(200, 1200, 200, depth);
+
+        Random random = new Random(42);
+        positions = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            positions[i] = random.nextInt(8);
+        }
+    }
+
+    /**
+     * A whole deck swiped: one dismiss sequence per removed card.
+     */
+    @Benchmark
+    public void dismissDeck(Blackhole blackhole) {
+        for (int count = 100; count >= 0; count--) {
+            engine.advance(1, count);
+            blackhole.consume(engine.shiftCount);
+            blackhole.consume(engine.bindLevels);
+            blackhole.consume(engine.snapshotLevels);
+        }
+    }
+
+    /**
+     * A whole deck skipped 3 cards at a time.
+     */
+    @Benchmark
+    public void skipDeck(Blackhole blackhole) {
+        for (int count = 100; count >= 0; count -= 3) {
+            engine.advance(3, count);
+            blackhole.consume(engine.shiftCount);
+            blackhole.consume(engine.bindLevels);
+            blackhole.consume(engine.snapshotLevels);
+        }
+    }
+
+    @Benchmark
+    public int notifyRouting() {
+        index = (index + 1) & (SAMPLES - 1);
+        return engine.dirtyLevels(positions[index], 1, (index & 1) == 0);
+    }
+}
@@ -0,0 +1,163 @@
+package net.brach.android.stackview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapter preparing the next items in background.
+ *
+ * 'onPrepare' runs on the given executor for the first items of the stack,
+ * the cheap 'onBindPrepared' applies the result on the main thread.
+ * A card displayed before its item is prepared is bound with 'null'
+ * and bound again as soon as the prepared data is available.
+ *
+ * @param <I> item type
+ * @param <T> prepared data type
+ */
+public abstract class AsyncAdapter<I, T> extends StackView.Adapter {
+    private final Executor executor;
+    private final int prefetch;
+    private final Handler handler;
+    private final ArrayList<Slot<I, T>> slots;
+    private boolean rebinding;
+
+    /**
+     * @param executor executor used to prepare the items
+     * @param prefetch number of items prepared in advance (at least the visible cards)
+     */
+    public AsyncAdapter(Executor executor, int prefetch) {
+        this.executor = executor;
+        this.prefetch = Math.max(1, prefetch);
+        this.handler = new Handler(Looper.getMainLooper());
+        this.slots = new ArrayList<>(this.prefetch);
+    }
+
+    /**
+     * Get the item at the given position (main thread).
+     *
+     * @param position item position
+     *
+     * @return the item given to 'onPrepare'.
+     */
+    public abstract I getItem(int position);
+
+    /**
+     * Prepare an item: data parsing, text layout, image decoding... (executor thread).
+     *
+     * @param item item to prepare
+     *
+     * @return the prepared data given to 'onBindPrepared'.
+     */
+    public abstract T onPrepare(I item);
+
+    /**
+     * Fill view with the prepared item (main thread).
+     *
+     * @param view view to fill
+     * @param position 'FIRST', 'SECOND' or a deeper card
+     * @param prepared prepared data, null if not ready yet
+     */
+    public abstract void onBindPrepared(View view, Position position, T prepared);
+
+    @Override
+    public final void onBindView(View view, Position position) {
+        prepare();
+
+        if (position.value < slots.size()) {
+            Slot<I, T> slot = slots.get(position.value);
+            if (slot.done) {
+                onBindPrepared(view, position, slot.value);
+                return;
+            }
+            slot.rebind = true;
+        }
+        onBindPrepared(view, position, null);
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    @Override
+    void onRemoved(int count) {
+        for (int i = 0; i < count && !slots.isEmpty(); i++) {
+            slots.remove(0).cancelled = true;
+        }
+        prepare();
+    }
+
+    @Override
+    void onChanged(final int positionStart) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onChanged(positionStart);
+                }
+            });
+            return;
+        }
+
+        if (rebinding) {
+            return;
+        }
+        while (slots.size() > positionStart) {
+            slots.remove(slots.size() - 1).cancelled = true;
+        }
+    }
+
+    private void prepare() {
+        int count = Math.min(prefetch, getItemCount());
+        for (int position = slots.size(); position < count; position++) {
+            Slot<I, T> slot = new Slot<>(this, getItem(position));
+            slots.add(slot);
+            executor.execute(slot);
+        }
+    }
+
+    private void onPrepared(Slot<I, T> slot) {
+        int position = slots.indexOf(slot);
+        if (position != -1 && slot.rebind) {
+            slot.rebind = false;
+            rebinding = true;
+            notifyItemChanged(position);
+            rebinding = false;
+        }
+    }
+
+    private static class Slot<I, T> implements Runnable {
+        private final AsyncAdapter<I, T> adapter;
+        private final I item;
+
+        private volatile boolean cancelled;
+        private boolean done;
+        private T value;
+        private boolean rebind;
+
+        Slot(AsyncAdapter<I, T> adapter, I item) {
+            this.adapter = adapter;
+            this.item = item;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            final T prepared = adapter.onPrepare(item);
+            adapter.handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    value = prepared;
+                    done = true;
+                    adapter.onPrepared(Slot.this);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.brach.android.stackview;
+
+import android.graphics.Bitmap;
+
+/**
+ * Source of reusable bitmaps for the card snapshots.
+ *
+ * Plug an application wide pool with 'StackView.setBitmapPool'.
+ */
+public interface BitmapPool {
+    /**
+     * Get a bitmap of the requested size.
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param config bitmap configuration
+     *
+     * @return a cleared mutable bitmap, or null if none is available.
+     */
+    Bitmap get(int width, int height, Bitmap.Config config);
+
+    /**
+     * Give back a bitmap no longer displayed.
+     *
+     * @param bitmap bitmap to reuse
+     */
+    void put(Bitmap bitmap);
+
+    /**
+     * Release all the pooled bitmaps.
+     */
+    void clear();
+}
@@ -0,0 +1,251 @@
+package net.brach.android.stackview;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Load the card images, downsampled to the card size, in background.
+ *
+ * The decoded bitmaps are kept in a LRU cache bounded in bytes: the live front card
+ * and the snapshot of the same item share one bitmap, decoded once.
+ * A card bound before its image is decoded shows the placeholder, then the image;
+ * a snapshot card (back and deeper cards) is notified changed to be snapshot again,
+ * at its position once decoded (by item id with stable ids, the cards may have been swiped meanwhile).
+ *
+ * Call the 'load' methods from 'Adapter.onBindView' (main thread).
+ */
+public class CardImageLoader {
+    private final StackView stackView;
+    private final Executor executor;
+    private final Handler handler;
+    private final Resources resources;
+    private final LruCache<String, Bitmap> cache;
+    private final HashMap<String, Task> tasks;
+
+    private int placeholder;
+
+    /**
+     * @param stackView StackView displaying the images (card size and adapter)
+     * @param executor executor used to decode the images
+     * @param maxSize maximum number of bytes of decoded bitmaps kept in memory
+     */
+    public CardImageLoader(StackView stackView, Executor executor, int maxSize) {
+        this.stackView = stackView;
+        this.executor = executor;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.resources = stackView.getResources();
+        this.cache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        this.tasks = new HashMap<>();
+    }
+
+    /**
+     * @param placeholder drawable resource shown while the image is decoded, 0 for none
+     */
+    public void setPlaceholder(int placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * Display an image resource in a card.
+     *
+     * @param view image view of the card
+     * @param position 'FIRST', 'SECOND' or a deeper card
+     * @param resId drawable resource of a bitmap
+     */
+    public void load(ImageView view, StackView.Adapter.Position position, int resId) {
+        load(view, position, new Source(resources, resId, null));
+    }
+
+    /**
+     * Display an image file in a card.
+     *
+     * @param view image view of the card
+     * @param position 'FIRST', 'SECOND' or a deeper card
+     * @param path path of the image file
+     */
+    public void load(ImageView view, StackView.Adapter.Position position, String path) {
+        load(view, position, new Source(resources, 0, path));
+    }
+
+    /**
+     * Drop the decoded bitmaps (e.g. when the memory is low).
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    private void load(ImageView view, StackView.Adapter.Position position, Source source) {
+        String key = source.key();
+        view.setTag(R.id.stackview_image_key, key);
+
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+
+        if (placeholder != 0) {
+            view.setImageResource(placeholder);
+        } else {
+            view.setImageDrawable(null);
+        }
+
+        Task task = tasks.get(key);
+        if (task == null) {
+            task = new Task(this, key, source, getTargetWidth(), getTargetHeight());
+            tasks.put(key, task);
+            executor.execute(task);
+        }
+        task.views.add(view);
+        StackView.Adapter adapter = stackView.getAdapter();
+        if (position != StackView.Adapter.Position.FIRST && adapter != null) {
+            // only a snapshot of the card is displayed
+            int index = position.value + stackView.getRemovedCount();
+            task.index = task.index < 0 ? index : Math.min(task.index, index);
+            if (adapter.hasStableIds()) {
+                task.ids.add(adapter.getItemId(position.value));
+            }
+        }
+    }
+
+    private int getTargetWidth() {
+        int width = stackView.getCardWidth();
+        return width > 0 ? width : resources.getDisplayMetrics().widthPixels;
+    }
+
+    private int getTargetHeight() {
+        int height = stackView.getCardHeight();
+        return height > 0 ? height : resources.getDisplayMetrics().heightPixels;
+    }
+
+    private void onDecoded(Task task, Bitmap bitmap) {
+        tasks.remove(task.key);
+        if (bitmap == null) {
+            return;
+        }
+        cache.put(task.key, bitmap);
+
+        for (ImageView view : task.views) {
+            if (task.key.equals(view.getTag(R.id.stackview_image_key))) {
+                view.setImageBitmap(bitmap);
+            }
+        }
+        StackView.Adapter adapter = stackView.getAdapter();
+        if (task.index < 0 || adapter == null) {
+            return;
+        }
+        // bound again from the cache, then snapshot
+        if (adapter.hasStableIds()) {
+            // the front card too: its cached snapshot was taken with the placeholder
+            int count = Math.min(adapter.getItemCount(), stackView.getDepth());
+            for (int position = 0; position < count; position++) {
+                if (task.ids.contains(adapter.getItemId(position))) {
+                    adapter.notifyItemChangedOnMainThread(position);
+                }
+            }
+        } else {
+            // the front card is live, already updated
+            int position = task.index - stackView.getRemovedCount();
+            if (position > 0 && position < adapter.getItemCount()) {
+                adapter.notifyItemChangedOnMainThread(position);
+            }
+        }
+    }
+
+    /**
+     * Power of two sample size keeping the image at least as large as the target.
+     */
+    private static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static class Source {
+        private final Resources resources;
+        private final int resId;
+        private final String path;
+
+        Source(Resources resources, int resId, String path) {
+            this.resources = resources;
+            this.resId = resId;
+            this.path = path;
+        }
+
+        String key() {
+            return path != null ? path : "res:" + resId;
+        }
+
+        Bitmap decode(BitmapFactory.Options options) {
+            if (path != null) {
+                return BitmapFactory.decodeFile(path, options);
+            }
+            // the bitmap is not scaled to the screen density: the sample size does it
+            options.inScaled = false;
+            return BitmapFactory.decodeResource(resources, resId, options);
+        }
+    }
+
+    private static class Task implements Runnable {
+        private final CardImageLoader loader;
+        private final String key;
+        private final Source source;
+        private final int targetWidth, targetHeight;
+
+        // main thread only
+        private final ArrayList<ImageView> views;
+        // first snapshot position, counted from the first item ever displayed (see 'StackView.getRemovedCount')
+        private int index;
+        // snapshot items with stable ids
+        private final ArrayList<Long> ids;
+
+        Task(CardImageLoader loader, String key, Source source, int targetWidth, int targetHeight) {
+            this.loader = loader;
+            this.key = key;
+            this.source = source;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.views = new ArrayList<>(2);
+            this.index = -1;
+            this.ids = new ArrayList<>(2);
+        }
+
+        @Override
+        public void run() {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            source.decode(options);
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+            final Bitmap bitmap = options.outWidth > 0 && options.outHeight > 0 ? source.decode(options) : null;
+
+            loader.handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    loader.onDecoded(Task.this, bitmap);
+                }
+            });
+        }
+    }
+}
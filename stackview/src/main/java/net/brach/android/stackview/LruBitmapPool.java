@@ -0,0 +1,79 @@
+package net.brach.android.stackview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * Size keyed bitmap pool bounded in bytes.
+ *
+ * The least recently given back bitmaps are recycled first when the pool is full.
+ */
+public class LruBitmapPool implements BitmapPool {
+    private final ArrayList<Bitmap> bitmaps;
+    private final int maxSize;
+    private int size;
+
+    /**
+     * @param maxSize maximum number of bytes kept in the pool
+     */
+    public LruBitmapPool(int maxSize) {
+        this.bitmaps = new ArrayList<>();
+        this.maxSize = maxSize;
+        this.size = 0;
+    }
+
+    @Override
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        for (int i = bitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = bitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                bitmaps.remove(i);
+                size -= bitmap.getByteCount();
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmaps.contains(bitmap)) {
+            return;
+        }
+
+        int byteCount = bitmap.getByteCount();
+        if (byteCount > maxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        bitmaps.add(bitmap);
+        size += byteCount;
+        trimToSize(maxSize);
+    }
+
+    @Override
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Number of bytes currently kept in the pool.
+     *
+     * @return size in bytes
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void trimToSize(int max) {
+        while (size > max && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.remove(0);
+            size -= bitmap.getByteCount();
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package net.brach.android.stackview;
+
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Adapter of a large deck loaded by pages in a bounded window.
+ *
+ * The loaded items are kept in a ring buffer: a swipe only moves the first index,
+ * whatever the size of the deck. When the number of loaded items drops to the prefetch distance,
+ * 'onLoadMore' asks for the next page, given to 'append' once loaded.
+ * The first page is asked when the adapter is set to the StackView.
+ *
+ * The buffer is not synchronized: call 'append' and 'clear' on the main thread.
+ *
+ * @param <I> item type
+ */
+public abstract class PagedAdapter<I> extends StackView.Adapter {
+    private final Object[] items;
+    private final int prefetch;
+
+    private int head;
+    private int size;
+    // removed items still in the buffer, behind the first one (rewind)
+    private int behind;
+    private boolean loading;
+    private boolean ended;
+    // first page asked while the StackView sets the adapter: the StackView binds the appended items itself
+    private boolean registering;
+
+    /**
+     * @param capacity maximum number of items kept in memory
+     * @param prefetch number of remaining items asking for the next page (at least the visible cards)
+     */
+    public PagedAdapter(int capacity, int prefetch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.items = new Object[capacity];
+        this.prefetch = Math.max(1, Math.min(prefetch, capacity - 1));
+    }
+
+    /**
+     * Load the next items (main thread), then give them to 'append', from the main thread.
+     * Not called again before 'append' or 'clear'.
+     *
+     * @param count free space in the window, maximum number of items to load
+     */
+    public abstract void onLoadMore(int count);
+
+    /**
+     * Fill view with the item.
+     *
+     * @param view view to fill
+     * @param position 'FIRST', 'SECOND' or a deeper card
+     * @param item item at the position
+     */
+    public abstract void onBindItem(View view, Position position, I item);
+
+    @Override
+    public final void onBindView(View view, Position position) {
+        onBindItem(view, position, getItem(position.value));
+    }
+
+    /**
+     * @param position item position, from the first card
+     *
+     * @return the loaded item at the given position.
+     */
+    @SuppressWarnings("unchecked")
+    public I getItem(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position " + position + " (size " + size + ")");
+        }
+        return (I) items[(head + position) % items.length];
+    }
+
+    /**
+     * Add the loaded items after the last one (main thread).
+     *
+     * @param page loaded items, empty at the end of the deck
+     *
+     * @return number of items added, limited by the free space of the window.
+     */
+    public int append(List<? extends I> page) {
+        loading = false;
+        if (page.isEmpty()) {
+            ended = true;
+            return 0;
+        }
+        int start = size;
+        int count = Math.min(page.size(), items.length - size);
+        for (int i = 0; i < count; i++) {
+            items[(head + size) % items.length] = page.get(i);
+            size++;
+        }
+        behind = Math.min(behind, items.length - size);
+        if (!registering) {
+            notifyItemRangeInsertedOnMainThread(start, count);
+        }
+        loadMore();
+        return count;
+    }
+
+    /**
+     * Drop the loaded items (e.g. a new deck) and ask for the first page (main thread).
+     */
+    public void clear() {
+        Arrays.fill(items, null);
+        head = 0;
+        size = 0;
+        behind = 0;
+        loading = false;
+        ended = false;
+        notifyDataSetChangedOnMainThread();
+        loadMore();
+    }
+
+    /**
+     * @return true when the last page was loaded.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return number of loaded items.
+     */
+    @Override
+    public int getItemCount() {
+        return size;
+    }
+
+    @Override
+    public void remove() {
+        remove(1);
+    }
+
+    @Override
+    public void remove(int count) {
+        count = Math.min(count, size);
+        head = (head + count) % items.length;
+        size -= count;
+        behind = Math.min(behind + count, items.length - size);
+        loadMore();
+    }
+
+    /**
+     * Insert back the last removed item, if its slot was not reused by a new page.
+     */
+    @Override
+    public boolean restore() {
+        if (behind == 0) {
+            return false;
+        }
+        head = (head + items.length - 1) % items.length;
+        size++;
+        behind--;
+        return true;
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    @Override
+    void register(StackView listener) {
+        super.register(listener);
+        if (listener != null) {
+            registering = true;
+            loadMore();
+            registering = false;
+        }
+    }
+
+    private void loadMore() {
+        if (!loading && !ended && size <= prefetch && size < items.length) {
+            loading = true;
+            onLoadMore(items.length - size);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package net.brach.android.stackview;
+
+/**
+ * View independent logic of the StackView: gesture classification, dismiss projection,
+ * stack states, dismiss sequencing and notification routing.
+ *
+ * Only plain Java here, so it can be benchmarked on a JVM (see the 'benchmark' module).
+ */
+final class StackEngine {
+    /** no item **/
+    static final int EMPTY = 0;
+    /** only the front card **/
+    static final int SINGLE = 1;
+    /** the front card and at least one card behind **/
+    static final int STACK = 2;
+
+    /** distance past the card width used to throw it out of the view **/
+    static final int DISMISS_OVERSHOOT = 300;
+
+    private final int swipe;
+    private final int animDuration;
+    private final int depth;
+    private float minFlingVelocity;
+
+    /** dismiss target computed by 'project' **/
+    float targetX, targetY;
+    int targetDuration;
+
+    /** dismiss sequence computed by 'advance' **/
+    int removed;
+    int nextState;
+    boolean keepDismissed;
+    int shiftCount;
+    int bindLevels;
+    int snapshotLevels;
+
+    StackEngine(int swipe, float minFlingVelocity, int animDuration, int depth) {
+        this.swipe = swipe;
+        this.minFlingVelocity = minFlingVelocity;
+        this.animDuration = animDuration;
+        this.depth = depth;
+    }
+
+    void setMinFlingVelocity(float minFlingVelocity) {
+        this.minFlingVelocity = minFlingVelocity;
+    }
+
+    float getMinFlingVelocity() {
+        return minFlingVelocity;
+    }
+
+    /**
+     * State of the stack for a number of items.
+     *
+     * @param itemCount number of items
+     *
+     * @return 'EMPTY', 'SINGLE' or 'STACK'
+     */
+    static int state(int itemCount) {
+        switch (itemCount) {
+            case 0:
+                return EMPTY;
+            case 1:
+                return SINGLE;
+            default:
+                return STACK;
+        }
+    }
+
+    /**
+     * Compute the sequence of a dismiss ('removed', 'nextState', 'keepDismissed', 'shiftCount',
+     * 'bindLevels', 'snapshotLevels'), levels as in 'dirtyLevels'.
+     *
+     * A single dismissed card is kept for the rewind, skipped cards can not be rewound in order.
+     * In a stack, the snapshots move up one level per removed card, the front card is bound,
+     * the back card is bound (snapshot at full resolution) and the deeper levels left empty are snapshot.
+     *
+     * @param count number of dismissed cards
+     * @param itemCount number of items before the dismiss
+     */
+    void advance(int count, int itemCount) {
+        removed = Math.max(0, Math.min(count, itemCount));
+        keepDismissed = removed == 1;
+        int remaining = itemCount - removed;
+        nextState = state(remaining);
+        switch (nextState) {
+            case EMPTY:
+                shiftCount = 0;
+                bindLevels = 0;
+                snapshotLevels = 0;
+                break;
+            case SINGLE:
+                shiftCount = 0;
+                bindLevels = 1;
+                snapshotLevels = 0;
+                break;
+            default:
+                shiftCount = Math.min(removed, depth - 1);
+                bindLevels = 3;
+                int end = Math.min(depth, remaining);
+                int start = Math.max(2, depth - shiftCount);
+                snapshotLevels = start < end ? ((1 << end) - 1) & ~((1 << start) - 1) : 0;
+                break;
+        }
+    }
+
+    /**
+     * Levels of the stack affected by a notification (bit 0 for the front card, bit 1 for the back card...).
+     *
+     * A change only dirties the changed cards, an insertion or a removal shifts every card after it.
+     *
+     * @param positionStart first changed position
+     * @param itemCount number of changed items
+     * @param structural true for an insertion or a removal, false for a change
+     *
+     * @return the dirty levels, 0 if no visible card is affected.
+     */
+    int dirtyLevels(int positionStart, int itemCount, boolean structural) {
+        if (itemCount <= 0 || positionStart >= depth) {
+            return 0;
+        }
+        int end = structural ? depth : Math.min(depth, positionStart + itemCount);
+        return ((1 << end) - 1) & ~((1 << positionStart) - 1);
+    }
+
+    /**
+     * @param dx horizontal translation of the front card
+     *
+     * @return true if releasing the card here removes it.
+     */
+    boolean isPastSwipe(float dx) {
+        return dx > swipe || dx < -swipe;
+    }
+
+    /**
+     * @param vx horizontal velocity
+     * @param vy vertical velocity
+     *
+     * @return true if the velocity is a horizontal fling.
+     */
+    boolean isFling(float vx, float vy) {
+        return Math.abs(vx) >= minFlingVelocity && Math.abs(vx) > Math.abs(vy);
+    }
+
+    /**
+     * Classify the release of the front card.
+     *
+     * @param dx horizontal translation of the front card
+     * @param vx horizontal velocity (pixels per second)
+     * @param vy vertical velocity (pixels per second)
+     *
+     * @return -1 to remove the card to the left, 1 to the right, 0 to settle it back.
+     */
+    int classify(float dx, float vx, float vy) {
+        boolean fling = isFling(vx, vy);
+        if (dx > swipe || (fling && vx > 0 && dx >= 0)) {
+            return 1;
+        } else if (dx < -swipe || (fling && vx < 0 && dx <= 0)) {
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Compute the dismiss target ('targetX', 'targetY', 'targetDuration') of the front card.
+     *
+     * A fling follows the velocity, otherwise the card follows the line through its last two positions.
+     *
+     * @param direction -1 (left) or 1 (right)
+     * @param x current horizontal translation
+     * @param y current vertical translation
+     * @param lastX previous horizontal translation
+     * @param lastY previous vertical translation
+     * @param vx horizontal velocity (pixels per second)
+     * @param vy vertical velocity (pixels per second)
+     * @param width card width
+     */
+    void project(int direction, float x, float y, float lastX, float lastY, float vx, float vy, float width) {
+        targetX = direction * (width + DISMISS_OVERSHOOT);
+        if (isFling(vx, vy) && vx * direction > 0) {
+            targetY = y + vy / vx * (targetX - x);
+            targetDuration = (int) Math.max(animDuration / 4, Math.min(animDuration, Math.abs(targetX - x) * 1000 / Math.abs(vx)));
+        } else {
+            float m = x != lastX ? (y - lastY) / (x - lastX) : 0;
+            targetY = y + m * (targetX - x);
+            targetDuration = animDuration;
+        }
+    }
+}
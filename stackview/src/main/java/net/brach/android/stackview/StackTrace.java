@@ -0,0 +1,133 @@
+package net.brach.android.stackview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * Systrace/Perfetto sections of the StackView, disabled by default (see 'StackView.setTraceEnabled').
+ *
+ * The sections need Android Jelly Bean MR2 and above. The async slices use 'Trace.beginAsyncSection'
+ * on Android Q and above, the hidden 'Trace.asyncTraceBegin' before, both through reflection
+ * (not in the compile SDK): they are skipped if not available.
+ */
+final class StackTrace {
+    static final String CREATE_AND_BIND_VIEW = "StackView.createAndBindView";
+    static final String FILL_FRONT = "StackView.fillFront";
+    static final String FILL_BACK = "StackView.fillBack";
+    static final String SNAPSHOT = "StackView.snapshot";
+    static final String NOTIFY_DATA_SET_CHANGED = "StackView.notifyDataSetChanged";
+    static final String DISMISS_END = "StackView.dismissEnd";
+    static final String DISMISS = "StackView.dismiss";
+
+    private static final long TRACE_TAG_APP = 1L << 12;
+
+    private static volatile boolean enabled;
+    private static int cookie;
+
+    private static boolean asyncResolved;
+    private static Method asyncBegin;
+    private static Method asyncEnd;
+    // the hidden methods take the trace tag first
+    private static boolean asyncTagged;
+
+    private StackTrace() {}
+
+    static void setEnabled(boolean enabled) {
+        StackTrace.enabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Begin a section, ended by 'endSection' on the same thread with the returned value.
+     *
+     * @param name section name
+     *
+     * @return true if the section is traced.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static boolean beginSection(String name) {
+        if (enabled) {
+            Trace.beginSection(name);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param traced value returned by 'beginSection', the sections stay balanced if the trace is toggled meanwhile
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static void endSection(boolean traced) {
+        if (traced) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Begin an async slice (e.g. an animation), ended by 'endAsync' with the returned cookie.
+     *
+     * @param name slice name
+     *
+     * @return the cookie of the slice, 0 if not traced.
+     */
+    static int beginAsync(String name) {
+        if (!enabled || !resolveAsync()) {
+            return 0;
+        }
+        int id = ++cookie == 0 ? ++cookie : cookie;
+        invoke(asyncBegin, name, id);
+        return id;
+    }
+
+    /**
+     * @param name slice name
+     * @param cookie cookie returned by 'beginAsync', 0 does nothing
+     */
+    static void endAsync(String name, int cookie) {
+        if (cookie != 0 && resolveAsync()) {
+            invoke(asyncEnd, name, cookie);
+        }
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    private static boolean resolveAsync() {
+        if (!asyncResolved) {
+            asyncResolved = true;
+            try {
+                if (Build.VERSION.SDK_INT >= 29) {
+                    asyncBegin = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                    asyncEnd = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+                } else {
+                    asyncBegin = Trace.class.getMethod("asyncTraceBegin", long.class, String.class, int.class);
+                    asyncEnd = Trace.class.getMethod("asyncTraceEnd", long.class, String.class, int.class);
+                    asyncTagged = true;
+                }
+            } catch (Exception e) {
+                asyncBegin = null;
+                asyncEnd = null;
+            }
+        }
+        return asyncBegin != null;
+    }
+
+    private static void invoke(Method method, String name, int cookie) {
+        try {
+            if (asyncTagged) {
+                method.invoke(null, TRACE_TAG_APP, name, cookie);
+            } else {
+                method.invoke(null, name, cookie);
+            }
+        } catch (Exception e) {
+            // not available on this device: the slice is skipped
+        }
+    }
+}
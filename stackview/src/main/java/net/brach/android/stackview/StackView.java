@@ -2,35 +2,71 @@ package net.brach.android.stackview;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
-import android.animation.PropertyValuesHolder;
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Picture;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.PictureDrawable;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.v7.widget.CardView;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.view.ViewPropertyAnimator;
+import android.view.ViewParent;
 import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StackView extends FrameLayout {
     private static final int DEFAULT_ACTION_COLOR = Color.BLACK;
+    private static final int MIN_DEPTH = 2;
+    // front card and up to 5 cards behind it
+    private static final int MAX_DEPTH = 6;
+    private static final int GHOST_COUNT = 3;
+
+    /** front card at rest **/
+    private static final int FRONT_IDLE = 0;
+    /** front card moved by the finger **/
+    private static final int FRONT_DRAGGED = 1;
+    /** front card going back to its place **/
+    private static final int FRONT_SETTLING = 2;
+    /** front card itself animated out (no snapshot available), the input is ignored **/
+    private static final int FRONT_DISMISSING = 3;
+
+    private static final int ACTION_HIDDEN = 0;
+    private static final int ACTION_SHOWING = 1;
+    private static final int ACTION_SHOWN = 2;
+    private static final int ACTION_HIDING = 3;
 
     private final int[] padding;
     private final int[] margin;
@@ -38,32 +74,75 @@ public class StackView extends FrameLayout {
     private final int animDuration;
     private final int swipe;
     private final boolean actionEnable;
-    private final int[] initPadding;
+    private final int depth;
+    private final StackEngine engine;
+    private final float deepScale;
 
     private FrameLayout front;
     private CardView frontContainer;
     private View frontContent;
-    private RelativeLayout frontAction;
+    private ActionDrawable frontAction;
 
     private FrameLayout back;
     private CardView backContainer;
     private ImageView backContent;
-    private boolean backInit;
+    // bound back card view in live mode
+    private View backLive;
+    private boolean liveBack;
+    private int cardWidth, cardHeight;
+    // measure specs of the StackView giving the card size
+    private int cardWidthSpec, cardHeightSpec;
+
+    private CardView[] deepContainers;
+    private ImageView[] deepContents;
+    private Drawable[] snapshots;
+    // item id and full resolution of the snapshots
+    private long[] snapshotIds;
+    private boolean[] fullSnapshots;
+    private SnapshotCache snapshotCache;
+    private long frontId;
+    private ArrayList<PictureDrawable> freePictures;
+    private SnapshotMode snapshotMode;
 
     private FrameLayout empty;
-    private CardView tmp;
+    private SnapshotCardView tmp;
+    private GhostCard[] ghosts;
+    private int nextGhost;
+
+    private int frontState;
+    private int actionState;
+    private float actionFrom;
 
-    private float initX = -1;
-    private float initY = -1;
     private Adapter adapter;
 
     private ValueAnimator addActionAnim;
     private ValueAnimator removeActionAnim;
-    private RemoveDirectionAnimator removeDirectionAnim;
+    private BackRevealAnimator backRevealAnim;
+    private MoveAnimator settleAnim;
+    private MoveAnimator dismissAnim;
 
     private FrontContainerOnTouchListener frontContainerOnTouchListener;
     private BackContentOnGlobalLayoutListener backContentOnGlobalLayoutListener;
     private AnimatorListenerHelper removeAnimatorListener;
+    private NotificationDispatcher notificationDispatcher;
+
+    private BitmapPool bitmapPool;
+    // drawables of the bitmaps given back to the pool, to wrap them again
+    private ArrayList<BitmapDrawable> freeDrawables;
+    // false once a pool, maybe shared, is given by the application
+    private boolean ownBitmapPool;
+    private TrimMemoryCallbacks trimMemoryCallbacks;
+    // snapshots released by 'trimMemory', snapshot again once visible
+    private boolean trimmed;
+    private RecycledViewPool viewPool;
+
+    private RevealMode revealMode;
+    private float backReveal;
+
+    private SwipeMetricsRecorder metricsRecorder;
+    private RewindBuffer rewindBuffer;
+    // items removed by the StackView since the adapter was set, less the rewound ones
+    private int removedCount;
 
     public StackView(Context context) {
         this(context, null);
@@ -79,6 +158,7 @@ public class StackView extends FrameLayout {
         DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.StackView, 0, 0);
         swipe = (int) a.getDimension(R.styleable.StackView_swipe, TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 67, displayMetrics));
+        float minFlingVelocity = a.getDimension(R.styleable.StackView_fling_minVelocity, TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 400, displayMetrics));
         if (a.hasValue(R.styleable.StackView_margin)) {
             int marg = (int) a.getDimension(R.styleable.StackView_margin, 0);
             margin = new int[] {marg, marg, marg, marg};
@@ -117,15 +197,33 @@ public class StackView extends FrameLayout {
         animDuration = a.getInteger(R.styleable.StackView_animation_duration, 200);
         int actionAnimDuration = a.getInteger(R.styleable.StackView_action_animation_duration, 150);
         int layout = a.getResourceId(R.styleable.StackView_preview_layout, -1);
+        int poolSize = a.getInteger(R.styleable.StackView_snapshot_pool_size, 2);
+        int cacheSize = a.getInteger(R.styleable.StackView_snapshot_cache_size, 3);
+        int rewindCount = a.getInteger(R.styleable.StackView_rewind_count, 0);
+        depth = Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, a.getInteger(R.styleable.StackView_stack_depth, MIN_DEPTH)));
+        deepScale = Math.max(0.1f, Math.min(1.f, a.getFloat(R.styleable.StackView_deep_snapshot_scale, 0.5f)));
+        snapshotMode = SnapshotMode.values()[a.getInt(R.styleable.StackView_snapshot_mode, SnapshotMode.AUTO.ordinal())];
+        revealMode = RevealMode.values()[a.getInt(R.styleable.StackView_reveal_mode, RevealMode.TRANSLATION.ordinal())];
+        liveBack = a.getBoolean(R.styleable.StackView_live_back_card, false);
         a.recycle();
 
-        initPadding = new int[] {getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom()};
+        engine = new StackEngine(swipe, minFlingVelocity, animDuration, depth);
+        viewPool = new RecycledViewPool();
+        metricsRecorder = new SwipeMetricsRecorder(this);
+        bitmapPool = new LruBitmapPool(poolSize * displayMetrics.widthPixels * displayMetrics.heightPixels * 4);
+        freeDrawables = new ArrayList<>(depth + GHOST_COUNT);
+        ownBitmapPool = true;
+        trimMemoryCallbacks = new TrimMemoryCallbacks(this);
+        snapshotCache = new SnapshotCache(this, cacheSize * displayMetrics.widthPixels * displayMetrics.heightPixels * 4);
+        frontId = Adapter.NO_ID;
+        rewindBuffer = new RewindBuffer(Math.max(0, rewindCount));
 
         // view configurations
         initViews(context, color, radius, compatPadding, actionColor, actionText, actionAppearance);
 
         // animation listeners
         initAnimationListeners(actionAnimDuration);
+        setBackReveal(0);
 
         if (isInEditMode() && layout != -1) {
             View inflate = inflate(getContext(), layout, frontContainer);
@@ -135,7 +233,8 @@ public class StackView extends FrameLayout {
 
     private void initViews(Context context, int color, float radius, boolean compatPadding, int actionColor, String actionText, int actionAppearance) {
         // tmp
-        tmp = initCardView(context, color, elevation, radius, compatPadding);
+        tmp = new SnapshotCardView(context);
+        initCardView(tmp, color, elevation, radius, compatPadding);
         tmp.setVisibility(INVISIBLE);
         ((MarginLayoutParams) tmp.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
         addView(tmp);
@@ -146,9 +245,30 @@ public class StackView extends FrameLayout {
         empty.setVisibility(GONE);
         addView(empty);
 
+        // deep cards, deepest drawn first
+        snapshots = new Drawable[depth];
+        snapshotIds = new long[depth];
+        fullSnapshots = new boolean[depth];
+        Arrays.fill(snapshotIds, Adapter.NO_ID);
+        freePictures = new ArrayList<>(depth);
+        deepContainers = new CardView[depth - MIN_DEPTH];
+        deepContents = new ImageView[depth - MIN_DEPTH];
+        for (int i = deepContainers.length - 1; i >= 0; i--) {
+            deepContainers[i] = initCardView(context, color, 0, radius, compatPadding);
+            ((MarginLayoutParams) deepContainers[i].getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
+            deepContainers[i].setVisibility(GONE);
+            addView(deepContainers[i]);
+
+            deepContents[i] = new ImageView(context);
+            deepContents[i].setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            deepContents[i].setScaleType(ImageView.ScaleType.FIT_XY);
+            deepContainers[i].addView(deepContents[i]);
+        }
+
         // back
         back = new FrameLayout(context);
         back.setLayoutParams(new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        ((MarginLayoutParams) back.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
         addView(back);
 
         backContainer = initCardView(context, color, 0, radius, compatPadding);
@@ -158,6 +278,7 @@ public class StackView extends FrameLayout {
         backContent.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
         backContent.setScaleType(ImageView.ScaleType.FIT_XY);
         backContent.setAdjustViewBounds(true);
+        backContent.setVisibility(liveBack ? GONE : VISIBLE);
         backContainer.addView(backContent);
 
         // front
@@ -169,16 +290,30 @@ public class StackView extends FrameLayout {
         ((MarginLayoutParams) frontContainer.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
         front.addView(frontContainer);
 
-        frontAction = new RelativeLayout(context);
-        frontAction.setLayoutParams(new LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
-        frontAction.setGravity(Gravity.CENTER);
-        frontAction.setBackgroundColor(actionColor);
+        // dismissed cards flying out, above the front card
+        ghosts = new GhostCard[GHOST_COUNT];
+        for (int i = 0; i < ghosts.length; i++) {
+            CardView ghost = initCardView(context, color, elevation, radius, compatPadding);
+            ((MarginLayoutParams) ghost.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
+            addView(ghost);
+            ghosts[i] = new GhostCard(this, ghost);
+        }
+
+        RelativeLayout frontActionView = new RelativeLayout(context);
+        frontActionView.setGravity(Gravity.CENTER);
+        frontActionView.setBackgroundColor(actionColor);
 
         TextView frontActionText = new TextView(context);
         frontActionText.setLayoutParams(new RelativeLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
         frontActionText.setText(actionText);
         setTextAppearance(context, frontActionText, actionAppearance);
-        frontAction.addView(frontActionText);
+        frontActionView.addView(frontActionText);
+
+        // drawn over the front card, only its alpha changes during the drag
+        frontAction = new ActionDrawable(frontActionView);
+        if (actionEnable) {
+            frontContainer.setForeground(frontAction);
+        }
 
         requestLayout();
     }
@@ -189,15 +324,15 @@ public class StackView extends FrameLayout {
         addActionAnim.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
-                float value = (float) animation.getAnimatedValue();
-                frontAction.setAlpha(value);
-                frontAction.requestLayout();
+                frontAction.setFraction(actionFrom + (1.f - actionFrom) * animation.getAnimatedFraction());
             }
         });
         addActionAnim.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onAnimationEnd(Animator animation) {
-                onOpen.set(false);
+                if (actionState == ACTION_SHOWING) {
+                    actionState = ACTION_SHOWN;
+                }
             }
         });
 
@@ -206,96 +341,480 @@ public class StackView extends FrameLayout {
         removeActionAnim.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
-                float value = (float) animation.getAnimatedValue();
-                frontAction.setAlpha(value);
-                frontAction.requestLayout();
+                frontAction.setFraction(actionFrom * (1.f - animation.getAnimatedFraction()));
             }
         });
         removeActionAnim.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onAnimationEnd(Animator animation) {
-                frontContainer.removeView(frontAction);
-                onClose.set(false);
-            }
-        });
-
-        removeDirectionAnim = new RemoveDirectionAnimator(padding, animDuration);
-        removeDirectionAnim.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                back.setPadding(
-                        (int) animation.getAnimatedValue("left"),
-                        (int) animation.getAnimatedValue("top"),
-                        (int) animation.getAnimatedValue("right"),
-                        (int) animation.getAnimatedValue("bottom"));
-                back.requestLayout();
-            }
-        });
-        removeDirectionAnim.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationStart(Animator animation) {
-                switch (removeDirectionAnim.direction) {
-                    case LEFT:
-                        remove((int) (initX - frontContainer.getWidth()), initY, animDuration);
-                        break;
-                    case RIGHT:
-                        remove((int) (initX + frontContainer.getWidth()), initY, animDuration);
-                        break;
+                // not when cancelled to show the action again
+                if (actionState == ACTION_HIDING) {
+                    actionState = ACTION_HIDDEN;
                 }
             }
         });
 
+        backRevealAnim = new BackRevealAnimator(this, animDuration);
+        settleAnim = new MoveAnimator(frontContainer);
+        dismissAnim = new MoveAnimator(frontContainer);
+
         frontContainerOnTouchListener = new FrontContainerOnTouchListener(this);
 
-        backContentOnGlobalLayoutListener = new BackContentOnGlobalLayoutListener(back, backContent);
+        backContentOnGlobalLayoutListener = new BackContentOnGlobalLayoutListener(this, back);
+
+        notificationDispatcher = new NotificationDispatcher(this);
 
-        removeAnimatorListener = new AnimatorListenerHelper(this, frontContainer, back, empty, padding, margin, initPadding);
+        removeAnimatorListener = new AnimatorListenerHelper(this);
+        dismissAnim.animator.addListener(removeAnimatorListener);
+
+        settleAnim.animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // not when cancelled by a new drag or a dismiss
+                if (frontState == FRONT_SETTLING) {
+                    frontState = FRONT_IDLE;
+                    setCardLayers(false);
+                }
+            }
+        });
     }
 
     public void setAdapter(final Adapter adapter) {
+        if (this.adapter != null) {
+            reset();
+        }
         this.adapter = adapter;
         this.adapter.register(this);
 
-        switch (adapter.getItemCount()) {
-            case 0:
+        switch (StackEngine.state(adapter.getItemCount())) {
+            case StackEngine.EMPTY:
                 View view = adapter.createAndBindEmptyView(empty);
                 if (view != null) {
                     empty.addView(view, -1);
                     empty.setVisibility(VISIBLE);
                 }
                 break;
-            default:
-                fillBack();
-            case 1:
+            case StackEngine.STACK:
+                fillBack(true);
+            case StackEngine.SINGLE:
                 empty.setVisibility(GONE);
                 fillFront();
-
-                if (initX == -1) {
-                    initX = frontContainer.getX();
-                    initY = frontContainer.getY();
-                    frontContainerOnTouchListener.initPosition();
-                    removeAnimatorListener.initPosition();
-                }
                 break;
         }
         requestLayout();
     }
 
+    public Adapter getAdapter() {
+        return adapter;
+    }
+
+    /**
+     * Size of the cards, known once the first card is measured.
+     *
+     * @return card width in pixels, 0 if not laid out yet.
+     */
+    public int getCardWidth() {
+        return cardWidth;
+    }
+
+    /**
+     * Size of the cards, known once the first card is measured.
+     *
+     * @return card height in pixels, 0 if not laid out yet.
+     */
+    public int getCardHeight() {
+        return cardHeight;
+    }
+
+    /**
+     * Replace the pool used to reuse the back card snapshots.
+     *
+     * @param bitmapPool pool to use (e.g. an application wide pool)
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        if (bitmapPool == null) {
+            throw new IllegalArgumentException("bitmapPool must not be null");
+        }
+        if (this.bitmapPool != bitmapPool) {
+            // a pool given before may be shared with other views
+            if (ownBitmapPool) {
+                this.bitmapPool.clear();
+                this.freeDrawables.clear();
+            }
+            this.bitmapPool = bitmapPool;
+            this.ownBitmapPool = false;
+        }
+    }
+
+    /**
+     * Minimum horizontal velocity for a flick shorter than the swipe distance to remove the card.
+     *
+     * @param minFlingVelocity velocity in pixels per second
+     */
+    public void setMinFlingVelocity(float minFlingVelocity) {
+        engine.setMinFlingVelocity(minFlingVelocity);
+    }
+
+    public float getMinFlingVelocity() {
+        return engine.getMinFlingVelocity();
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    /**
+     * Replace the pool of detached card views (e.g. to share it between several StackView).
+     *
+     * @param viewPool pool to use
+     */
+    public void setRecycledViewPool(RecycledViewPool viewPool) {
+        if (viewPool == null) {
+            throw new IllegalArgumentException("viewPool must not be null");
+        }
+        this.viewPool = viewPool;
+    }
+
+    public RecycledViewPool getRecycledViewPool() {
+        return viewPool;
+    }
+
+    /**
+     * Change how the back card is revealed while the front card is moved.
+     *
+     * @param revealMode 'TRANSLATION' (default) or 'PADDING'
+     */
+    public void setRevealMode(RevealMode revealMode) {
+        if (this.revealMode != revealMode) {
+            float reveal = backReveal;
+            setBackReveal(1);
+            this.revealMode = revealMode;
+            setBackReveal(reveal);
+        }
+    }
+
+    public RevealMode getRevealMode() {
+        return revealMode;
+    }
+
+    /**
+     * Change how the cards behind the front card are snapshot.
+     *
+     * @param snapshotMode 'AUTO' (default), 'BITMAP' or 'PICTURE'
+     */
+    public void setSnapshotMode(SnapshotMode snapshotMode) {
+        if (this.snapshotMode != snapshotMode) {
+            this.snapshotMode = snapshotMode;
+            if (adapter != null && adapter.getItemCount() > 1) {
+                fillBack(true);
+            }
+        }
+    }
+
+    public SnapshotMode getSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * Display the back card as a bound view instead of a snapshot.
+     *
+     * A live back card costs no snapshot bitmap nor snapshot drawing and its content keeps running
+     * (animations, progress...), but it is a second bound view to measure, lay out and draw;
+     * it is rendered in a hardware layer while the cards move. The deeper cards are still snapshot.
+     *
+     * @param liveBackCard true for a live back card, false for a snapshot (default)
+     */
+    public void setLiveBackCard(boolean liveBackCard) {
+        if (this.liveBack != liveBackCard) {
+            this.liveBack = liveBackCard;
+            backContent.setVisibility(liveBackCard ? GONE : VISIBLE);
+            if (!liveBackCard && backLive != null) {
+                backContainer.removeView(backLive);
+                viewPool.putRecycledView(backLive);
+                backLive = null;
+            }
+            if (adapter != null && adapter.getItemCount() > 1) {
+                backContentOnGlobalLayoutListener.snapshot(1);
+            }
+        }
+    }
+
+    public boolean isLiveBackCard() {
+        return liveBack;
+    }
+
+    /**
+     * Add Systrace/Perfetto sections around the binds, the snapshots, the notifications and the end of the dismisses,
+     * and an async slice per dismiss animation (Android Jelly Bean MR2 and above).
+     *
+     * @param enabled true to trace every StackView, false by default
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        StackTrace.setEnabled(enabled);
+    }
+
+    /**
+     * Number of dismissed cards kept, still bound to their item, to be rewound.
+     *
+     * @param rewindCount number of cards (0 by default)
+     */
+    public void setRewindCount(int rewindCount) {
+        rewindBuffer.setCapacity(Math.max(0, rewindCount), viewPool);
+    }
+
+    public int getRewindCount() {
+        return rewindBuffer.capacity;
+    }
+
+    /**
+     * Bring back the last dismissed card from where it left the stack.
+     *
+     * The card is kept bound to its item: nothing is inflated nor bound,
+     * the current front card is snapshot to become the back card.
+     * The adapter inserts the item back with 'Adapter.restore'.
+     *
+     * @return true if a card is rewound.
+     */
+    public boolean rewind() {
+        if (adapter == null || rewindBuffer.isEmpty() || frontState == FRONT_DISMISSING || !adapter.restore()) {
+            return false;
+        }
+        adapter.onChanged(0);
+        notificationDispatcher.shift(-1);
+        removedCount--;
+
+        RewindBuffer.Card card = rewindBuffer.pop();
+        float x = card.x, y = card.y;
+        GhostCard ghost = ghosts[(nextGhost + ghosts.length - 1) % ghosts.length];
+        if (ghost.isFlying()) {
+            // the card is still flying out: come back from where it is
+            x = ghost.container.getTranslationX();
+            y = ghost.container.getTranslationY();
+            ghost.land();
+        }
+        hideActionView();
+        if (frontContent != null && frontContainer.getVisibility() == VISIBLE) {
+            // the front card becomes the back card
+            unshiftSnapshots(frontContent);
+            back.setVisibility(VISIBLE);
+            backContainer.setCardElevation(elevation);
+            setBackReveal(1);
+            backRevealAnim.animateTo(0, 0);
+        }
+        if (frontContent != null) {
+            frontContainer.removeView(frontContent);
+            viewPool.putRecycledView(frontContent);
+        }
+        frontContent = card.view;
+        frontContainer.addView(frontContent, 0);
+        frontId = getItemId(0);
+
+        empty.setVisibility(GONE);
+        frontContainer.setVisibility(VISIBLE);
+        frontContainerOnTouchListener.init();
+        frontContainer.setOnTouchListener(frontContainerOnTouchListener);
+        updateDeepVisibility();
+
+        frontState = FRONT_SETTLING;
+        setCardLayers(true);
+        frontContainer.setTranslationX(x);
+        frontContainer.setTranslationY(y);
+        settleAnim.start(0, 0, animDuration);
+        return true;
+    }
+
+    /**
+     * The first card measured in the available space gives the size of every card,
+     * measured again only when the available space changes.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        boolean resized = widthMeasureSpec != cardWidthSpec || heightMeasureSpec != cardHeightSpec;
+        if (frontContainer.getChildCount() > 0 && (resized || cardWidth == 0)) {
+            MarginLayoutParams lp = (MarginLayoutParams) frontContainer.getLayoutParams();
+            frontContainer.measure(
+                    getChildMeasureSpec(widthMeasureSpec, getPaddingLeft() + getPaddingRight() + lp.leftMargin + lp.rightMargin, LayoutParams.WRAP_CONTENT),
+                    getChildMeasureSpec(heightMeasureSpec, getPaddingTop() + getPaddingBottom() + lp.topMargin + lp.bottomMargin, LayoutParams.WRAP_CONTENT));
+            cardWidthSpec = widthMeasureSpec;
+            cardHeightSpec = heightMeasureSpec;
+            setCardSize(frontContainer.getMeasuredWidth(), frontContainer.getMeasuredHeight());
+        }
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        metricsRecorder.onLayoutPass();
+        applyLevels();
+    }
+
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
+        // also called by the super constructor, before the recorder exists
+        if (metricsRecorder != null) {
+            metricsRecorder.onRequestLayout();
+        }
+    }
+
+    /**
+     * Report the performance of the swipes.
+     *
+     * @param listener listener called once the next cards are bound and snapshot, null to stop
+     * @param sampleRate fraction of the swipes measured, between 0 and 1
+     */
+    public void setOnSwipeMetricsListener(OnSwipeMetricsListener listener, float sampleRate) {
+        metricsRecorder.setListener(listener, sampleRate);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        metricsRecorder.attach();
+        getContext().getApplicationContext().registerComponentCallbacks(trimMemoryCallbacks);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getContext().getApplicationContext().unregisterComponentCallbacks(trimMemoryCallbacks);
+        metricsRecorder.detach();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == VISIBLE && trimmed) {
+            trimmed = false;
+            if (adapter != null && adapter.getItemCount() > 1) {
+                fillBack(true);
+            }
+        }
+    }
+
+    /**
+     * Release memory according to a 'ComponentCallbacks2' trim level.
+     * Called automatically while the StackView is attached.
+     *
+     * From 'TRIM_MEMORY_RUNNING_LOW': the cached snapshots, the pooled bitmaps (not those of a pool given
+     * to 'setBitmapPool') and the recycled views.
+     * From 'TRIM_MEMORY_UI_HIDDEN', if the window is not visible: also the snapshots and the cards bound for them,
+     * snapshot again once visible (the cards on screen are kept while visible).
+     * From 'TRIM_MEMORY_BACKGROUND': also the dismissed cards kept for 'rewind'.
+     *
+     * @param level trim level
+     */
+    public void trimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN && getWindowVisibility() != VISIBLE) {
+            backContentOnGlobalLayoutListener.clear();
+            for (int i = 1; i < depth; i++) {
+                setSnapshot(i, null, Adapter.NO_ID, false);
+            }
+            if (backLive != null) {
+                backContainer.removeView(backLive);
+                backLive = null;
+            }
+            trimmed = true;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            rewindBuffer.clear();
+        }
+        snapshotCache.evictAll();
+        freePictures.clear();
+        freeDrawables.clear();
+        // a pool given to 'setBitmapPool' is trimmed by its owner
+        if (ownBitmapPool) {
+            bitmapPool.clear();
+        }
+        viewPool.clear();
+    }
+
+    /**
+     * Bytes of the bitmaps held by the StackView: snapshots, cached snapshots,
+     * snapshots of the cards flying out and pooled bitmaps (not counted for a pool given to 'setBitmapPool').
+     * The views and the recorded pictures are not counted.
+     *
+     * @return size in bytes
+     */
+    public long getRetainedBytes() {
+        long bytes = snapshotCache.size();
+        for (Drawable snapshot : snapshots) {
+            bytes += getByteCount(snapshot);
+        }
+        for (GhostCard ghost : ghosts) {
+            bytes += getByteCount(ghost.snapshot);
+        }
+        if (ownBitmapPool && bitmapPool instanceof LruBitmapPool) {
+            bytes += ((LruBitmapPool) bitmapPool).size();
+        }
+        return bytes;
+    }
+
+    private static int getByteCount(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null && !bitmap.isRecycled() ? bitmap.getByteCount() : 0;
+        }
+        return 0;
+    }
+
+    public interface OnSwipeMetricsListener {
+        /**
+         * Called on the main thread after a sampled swipe.
+         *
+         * @param metrics metrics of the swipe, reused for the next swipes
+         */
+        void onSwipeMetrics(SwipeMetrics metrics);
+    }
+
     public enum Direction {
         LEFT, RIGHT
     }
 
+    public enum SnapshotMode {
+        /** 'PICTURE' when supported, 'BITMAP' otherwise **/
+        AUTO,
+        /** software draw into a pooled ARGB_8888 bitmap **/
+        BITMAP,
+        /** record the draw commands into a Picture replayed by the GPU (Android M and above), 'BITMAP' otherwise **/
+        PICTURE
+    }
+
+    public enum RevealMode {
+        /** scale and translate the back card, no layout pass while animating **/
+        TRANSLATION,
+        /** animate the padding of the back card, one layout pass per frame **/
+        PADDING
+    }
+
     public static abstract class Adapter {
+        public static final long NO_ID = -1;
+
         private StackView stackView;
 
         public enum Position {
-            FIRST(0), SECOND(1);
+            FIRST(0), SECOND(1), THIRD(2), FOURTH(3), FIFTH(4), SIXTH(5);
+
+            private static final Position[] POSITIONS = values();
 
             public final int value;
 
             Position(int value) {
                 this.value = value;
             }
+
+            /**
+             * @param value position of the card in the stack
+             *
+             * @return the position, without the copy made by 'values()'.
+             */
+            static Position at(int value) {
+                return POSITIONS[value];
+            }
         }
 
         /**
@@ -315,7 +834,7 @@ public class StackView extends FrameLayout {
          * Create/Inflate the default view used by the method 'createAndBindView'.
          *
          * @param parent container
-         * @param position 'FIRST' or 'SECOND'
+         * @param position 'FIRST', 'SECOND' or a deeper card
          *
          * @return the default view to use.
          */
@@ -325,28 +844,105 @@ public class StackView extends FrameLayout {
          * Fill view with the item.
          *
          * @param view view to fill
-         * @param position 'FIRST' or 'SECOND'
+         * @param position 'FIRST', 'SECOND' or a deeper card
          */
         public abstract void onBindView(View view, Position position);
 
+        /**
+         * Fill view with the changes of the item.
+         *
+         * Called instead of 'onBindView(view, position)' when the item was only notified
+         * by 'notifyItemChanged(position, payload)' since the view was bound to it:
+         * only the sub views concerned by the payloads need to be updated.
+         * Fill the whole view by default.
+         *
+         * @param view view bound to the item
+         * @param position 'FIRST', 'SECOND' or a deeper card
+         * @param payloads payloads given to 'notifyItemChanged', in order
+         */
+        public void onBindView(View view, Position position, List<Object> payloads) {
+            onBindView(view, position);
+        }
+
+        /**
+         * Type of the view used to display the item.
+         * A view is only reused to display items of the same type.
+         *
+         * @param position 'FIRST', 'SECOND' or a deeper card
+         *
+         * @return the view type (0 by default).
+         */
+        public int getItemViewType(Position position) {
+            return 0;
+        }
+
+        /**
+         * Stable identifier of the item, used when 'hasStableIds' returns true.
+         *
+         * @param position item position
+         *
+         * @return the item id ('NO_ID' by default).
+         */
+        public long getItemId(int position) {
+            return NO_ID;
+        }
+
+        /**
+         * Whether 'getItemId' identifies the items.
+         *
+         * With stable ids, an insertion, a removal or 'notifyDataSetChanged' does not bind again
+         * the cards whose item did not move, and the snapshots of the items are cached to be reused
+         * when they come back. Notify content changes with 'notifyItemChanged'.
+         *
+         * @return false by default.
+         */
+        public boolean hasStableIds() {
+            return false;
+        }
+
         /**
          * Create the view and fill it with the item.
          * Use by default the methods 'onCreateView' and 'onBindView'.
          *
+         * The view already in the container is rebound if it has the right type,
+         * otherwise a view is taken from the recycled view pool before creating a new one.
+         *
          * @param parent container
-         * @param position 'FIRST' or 'SECOND'
+         * @param position 'FIRST', 'SECOND' or a deeper card
          *
          * @return the view corresponding to the item.
          */
         public View createAndBindView(ViewGroup parent, Position position) {
-            if (getItemCount() > 0) {
-                parent.removeAllViews();
-                View view = onCreateView(parent, position);
-                parent.addView(view, -1);
-                onBindView(view, position);
-                return view;
+            boolean traced = StackTrace.beginSection(StackTrace.CREATE_AND_BIND_VIEW);
+            try {
+                if (getItemCount() > 0) {
+                    int viewType = getItemViewType(position);
+                    RecycledViewPool pool = stackView.viewPool;
+
+                    View view = RecycledViewPool.findView(parent);
+                    if (view != null && RecycledViewPool.getViewType(view) != viewType) {
+                        parent.removeView(view);
+                        pool.putRecycledView(view);
+                        view = null;
+                    }
+                    if (view == null) {
+                        view = pool.getRecycledView(viewType);
+                        if (view == null) {
+                            view = onCreateView(parent, position);
+                            RecycledViewPool.setViewType(view, viewType);
+                            stackView.metricsRecorder.onCreateView();
+                        }
+                        parent.addView(view, 0);
+                    }
+
+                    onBindView(view, position);
+                    stackView.metricsRecorder.onBindView();
+                    return view;
+                }
+                return null;
+            } finally {
+                StackTrace.endSection(traced);
             }
-            return null;
         }
 
         /**
@@ -364,6 +960,19 @@ public class StackView extends FrameLayout {
          */
         public abstract void remove();
 
+        /**
+         * Remove the first elements.
+         *
+         * Called once for a batch dismiss, remove the first element 'count' times by default.
+         *
+         * @param count number of elements to remove
+         */
+        public void remove(int count) {
+            for (int i = 0; i < count; i++) {
+                remove();
+            }
+        }
+
         /**
          * Remove first element and animate the view.
          *
@@ -372,52 +981,85 @@ public class StackView extends FrameLayout {
          * @param direction animation direction
          */
         public void remove(Direction direction) {
-            stackView.remove(direction);
+            stackView.remove(1, direction);
+        }
+
+        /**
+         * Remove the first elements with a single card animation.
+         *
+         * The skipped elements are never bound nor snapshot,
+         * only the new first cards are bound once the animation ends.
+         * Call the method 'remove(count)'.
+         *
+         * @param count number of elements to remove
+         * @param direction animation direction
+         */
+        public void remove(int count, Direction direction) {
+            stackView.remove(count, direction);
+        }
+
+        /**
+         * Insert back the last removed element at the first position.
+         *
+         * Called by 'StackView.rewind', the card of the element is not bound again.
+         *
+         * @return true if the element is inserted back, false if it can not be (default).
+         */
+        public boolean restore() {
+            return false;
         }
 
         /********************/
         /** in main thread **/
         /********************/
 
+        // notifications are coalesced and applied at most once per frame, from any thread
+
         public void notifyDataSetChangedOnMainThread() {
             if (stackView != null) {
-                stackView.notify(0, true);
+                stackView.notify(0, 1, true);
             }
         }
 
         public void notifyItemInsertedOnMainThread(int position) {
             if (stackView != null) {
-                stackView.notify(position, true);
+                stackView.notify(position, 1, true);
             }
         }
 
         public void notifyItemRemovedOnMainThread(int position) {
             if (stackView != null) {
-                stackView.notify(position, true);
+                stackView.notify(position, 1, true);
             }
         }
 
         public void notifyItemChangedOnMainThread(int position) {
             if (stackView != null) {
-                stackView.notify(position, true);
+                stackView.notify(position, 1, false);
+            }
+        }
+
+        public void notifyItemChangedOnMainThread(int position, Object payload) {
+            if (stackView != null) {
+                stackView.notify(position, 1, false, payload);
             }
         }
 
         public void notifyItemRangeInsertedOnMainThread(int positionStart, int itemCount) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, true);
+                stackView.notify(positionStart, itemCount, true);
             }
         }
 
         public void notifyItemRangeRemovedOnMainThread(int positionStart, int itemCount) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, true);
+                stackView.notify(positionStart, itemCount, true);
             }
         }
 
         public void notifyItemRangeChangedOnMainThread(int positionStart, int itemCount) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, true);
+                stackView.notify(positionStart, itemCount, false);
             }
         }
 
@@ -427,43 +1069,55 @@ public class StackView extends FrameLayout {
 
         public void notifyDataSetChanged() {
             if (stackView != null) {
-                stackView.notify(0, false);
+                stackView.notify(0, 1, true);
             }
         }
 
         public void notifyItemInserted(int position) {
             if (stackView != null) {
-                stackView.notify(position, false);
+                stackView.notify(position, 1, true);
             }
         }
 
         public void notifyItemRemoved(int position) {
             if (stackView != null) {
-                stackView.notify(position, false);
+                stackView.notify(position, 1, true);
             }
         }
 
         public void notifyItemChanged(int position) {
             if (stackView != null) {
-                stackView.notify(position, false);
+                stackView.notify(position, 1, false);
+            }
+        }
+
+        /**
+         * Notify a partial change of an item, bound with 'onBindView(view, position, payloads)'.
+         *
+         * @param position item position
+         * @param payload description of the change, null for a complete change
+         */
+        public void notifyItemChanged(int position, Object payload) {
+            if (stackView != null) {
+                stackView.notify(position, 1, false, payload);
             }
         }
 
         public void notifyItemRangeInserted(int positionStart, int itemCount, boolean inMainThread) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, false);
+                stackView.notify(positionStart, itemCount, true);
             }
         }
 
         public void notifyItemRangeRemoved(int positionStart, int itemCount, boolean inMainThread) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, false);
+                stackView.notify(positionStart, itemCount, true);
             }
         }
 
         public void notifyItemRangeChanged(int positionStart, int itemCount, boolean inMainThread) {
             if (stackView != null) {
-                stackView.notifyRange(positionStart, itemCount, false);
+                stackView.notify(positionStart, itemCount, false);
             }
         }
 
@@ -474,386 +1128,1989 @@ public class StackView extends FrameLayout {
         void register(StackView listener) {
             this.stackView = listener;
         }
+
+        /**
+         * Called after the first 'count' elements are removed by the StackView.
+         */
+        void onRemoved(int count) {}
+
+        /**
+         * Called when the items from 'positionStart' may have changed.
+         * Can be called from any thread.
+         */
+        void onChanged(int positionStart) {}
     }
 
-    void notify(int position, boolean inMainThread) {
-        switch (position) {
-            case 0:
-            case 1:
-                if (inMainThread) {
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        @Override
-                        public void run() {
-                            notifyDataSetChanged();
-                        }
-                    });
-                } else {
-                    notifyDataSetChanged();
-                }
-                break;
+    /**
+     * Pool of detached card views, sorted by view type.
+     */
+    public static class RecycledViewPool {
+        private static final int DEFAULT_MAX_SCRAP = 2;
+
+        private final SparseArray<ArrayList<View>> scraps;
+        private final SparseIntArray maxScraps;
+
+        public RecycledViewPool() {
+            this.scraps = new SparseArray<>();
+            this.maxScraps = new SparseIntArray();
         }
-    }
 
-    void notifyRange(int positionStart, int itemCount, boolean inMainThread) {
-        if (itemCount > 0 && positionStart < 2) {
-            notify(positionStart, inMainThread);
+        /**
+         * Maximum number of detached views kept for a view type.
+         *
+         * @param viewType view type
+         * @param max maximum number of views
+         */
+        public void setMaxRecycledViews(int viewType, int max) {
+            maxScraps.put(viewType, max);
+            ArrayList<View> scrap = scraps.get(viewType);
+            while (scrap != null && scrap.size() > max) {
+                scrap.remove(scrap.size() - 1);
+            }
         }
-    }
 
-    @SuppressWarnings("unchecked")
-    void notifyDataSetChanged() {
-        switch (adapter.getItemCount()) {
-            case 0:
-                if (frontContent != null) {
-                    frontContainer.setVisibility(GONE);
-                    frontContainer.requestLayout();
-                }
-                if (backContent.getDrawable() != null) {
-                    back.setVisibility(GONE);
-                    back.requestLayout();
-                }
-                View view = adapter.createAndBindEmptyView(empty);
-                if (view != null) {
-                    empty.addView(view, -1);
-                    empty.setVisibility(VISIBLE);
-                }
-                break;
-            default:
-                if (backContent.getDrawable() != null) {
-                    fillBack();
-                    back.setVisibility(VISIBLE);
-                    back.requestLayout();
-                } else {
-                    fillBack();
-                }
-            case 1:
-                empty.setVisibility(GONE);
-                if (frontContent != null) {
-                    adapter.onBindView(frontContent, Adapter.Position.FIRST);
-                    frontContainer.setVisibility(VISIBLE);
-                    frontContainer.requestLayout();
-                } else {
-                    fillFront();
+        /**
+         * Get a detached view of the given type.
+         *
+         * @param viewType view type
+         *
+         * @return a detached view, or null if none is available.
+         */
+        public View getRecycledView(int viewType) {
+            ArrayList<View> scrap = scraps.get(viewType);
+            if (scrap != null && !scrap.isEmpty()) {
+                return scrap.remove(scrap.size() - 1);
+            }
+            return null;
+        }
+
+        /**
+         * Keep a detached view to be reused later.
+         *
+         * @param view detached view
+         */
+        public void putRecycledView(View view) {
+            int viewType = getViewType(view);
+            ArrayList<View> scrap = scraps.get(viewType);
+            if (scrap == null) {
+                scrap = new ArrayList<>();
+                scraps.put(viewType, scrap);
+            }
+            if (scrap.size() < maxScraps.get(viewType, DEFAULT_MAX_SCRAP) && !scrap.contains(view)) {
+                scrap.add(view);
+            }
+        }
+
+        public void clear() {
+            scraps.clear();
+        }
+
+        static View findView(ViewGroup parent) {
+            for (int i = 0; i < parent.getChildCount(); i++) {
+                View child = parent.getChildAt(i);
+                if (child.getTag(R.id.stackview_view_type) != null) {
+                    return child;
                 }
-                break;
+            }
+            return null;
         }
-    }
 
-    /*************/
-    /** private **/
-    /*************/
+        static int getViewType(View view) {
+            Object viewType = view.getTag(R.id.stackview_view_type);
+            return viewType != null ? (int) viewType : 0;
+        }
 
-    private void fillBack() {
-        View view = adapter.createAndBindView(tmp, Adapter.Position.SECOND);
+        static void setViewType(View view, int viewType) {
+            view.setTag(R.id.stackview_view_type, viewType);
+        }
+    }
 
-        backContentOnGlobalLayoutListener.init(view);
-        addOnGlobalLayoutListener(view, backContentOnGlobalLayoutListener);
+    void notify(int positionStart, int itemCount, boolean structural) {
+        notify(positionStart, itemCount, structural, null);
+    }
+
+    void notify(int positionStart, int itemCount, boolean structural, Object payload) {
+        adapter.onChanged(positionStart);
+        if (!structural && adapter.hasStableIds()) {
+            // the cached snapshots of the changed items are stale, evicted on the main thread
+            if (itemCount == 1) {
+                notificationDispatcher.evict(adapter.getItemId(positionStart));
+            } else if (itemCount > 1) {
+                notificationDispatcher.evictAll();
+            }
+        }
+        int levels = engine.dirtyLevels(positionStart, itemCount, structural);
+        if (levels != 0) {
+            notificationDispatcher.dispatch(levels, payload, structural);
+        }
+    }
+
+    /**
+     * Rebind the dirty cards: the front card is bound again, the cards behind are snapshot again.
+     *
+     * @param levels dirty levels (bit 0 for the front card, bit 1 for the back card...)
+     * @param movedLevels levels only dirtied by insertions and removals
+     * @param partialLevels levels only changed by payloads
+     * @param payloads payloads of the partial levels, by level
+     */
+    void notifyDataSetChanged(int levels, int movedLevels, int partialLevels, List<List<Object>> payloads) {
+        boolean traced = StackTrace.beginSection(StackTrace.NOTIFY_DATA_SET_CHANGED);
+        try {
+            if (adapter.hasStableIds()) {
+                // cards still displaying the same item
+                for (int level = 0; level < depth; level++) {
+                    if ((movedLevels & 1 << level) != 0) {
+                        long id = getItemId(level);
+                        if (id != Adapter.NO_ID && id == (level == 0 ? frontId : snapshotIds[level])) {
+                            levels &= ~(1 << level);
+                        }
+                    }
+                }
+            }
+
+            switch (StackEngine.state(adapter.getItemCount())) {
+                case StackEngine.EMPTY:
+                    if (frontContent != null) {
+                        frontContainer.setVisibility(GONE);
+                        frontContainer.requestLayout();
+                    }
+                    if (hasBackCard()) {
+                        back.setVisibility(GONE);
+                        back.requestLayout();
+                    }
+                    View view = adapter.createAndBindEmptyView(empty);
+                    if (view != null) {
+                        empty.addView(view, -1);
+                        empty.setVisibility(VISIBLE);
+                    }
+                    break;
+                case StackEngine.STACK:
+                    for (int level = MIN_DEPTH; level < depth; level++) {
+                        // low resolution snapshots are cheap enough to be taken again on a partial change
+                        if (((levels | partialLevels) & 1 << level) != 0) {
+                            backContentOnGlobalLayoutListener.invalidate(level);
+                        }
+                    }
+                    if ((levels & 1 << 1) != 0) {
+                        backContentOnGlobalLayoutListener.snapshot(1);
+                        back.setVisibility(VISIBLE);
+                        back.requestLayout();
+                    } else if ((partialLevels & 1 << 1) != 0) {
+                        backContentOnGlobalLayoutListener.update(1, payloads.get(1));
+                    }
+                case StackEngine.SINGLE:
+                    empty.setVisibility(GONE);
+                    if ((levels & 1) == 0 && (partialLevels & 1) == 0) {
+                        // the front card did not change
+                    } else if (frontContent != null
+                            && RecycledViewPool.getViewType(frontContent) == adapter.getItemViewType(Adapter.Position.FIRST)) {
+                        long start = System.nanoTime();
+                        if ((levels & 1) != 0) {
+                            adapter.onBindView(frontContent, Adapter.Position.FIRST);
+                        } else {
+                            adapter.onBindView(frontContent, Adapter.Position.FIRST, payloads.get(0));
+                        }
+                        metricsRecorder.addBindTime(System.nanoTime() - start);
+                        metricsRecorder.onBindView();
+                        frontId = getItemId(0);
+                        frontContainer.setVisibility(VISIBLE);
+                        frontContainer.requestLayout();
+                    } else {
+                        fillFront();
+                    }
+                    break;
+            }
+            updateDeepVisibility();
+        } finally {
+            StackTrace.endSection(traced);
+        }
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    /**
+     * Forget the views, the snapshots, the item ids and the pending notifications of the previous adapter.
+     */
+    private void reset() {
+        adapter.register(null);
+        notificationDispatcher.clear();
+        backContentOnGlobalLayoutListener.clear();
+
+        // the end listeners do nothing once idle
+        frontState = FRONT_IDLE;
+        settleAnim.animator.cancel();
+        dismissAnim.animator.cancel();
+        for (GhostCard ghost : ghosts) {
+            ghost.land();
+        }
+        hideActionView();
+        backRevealAnim.cancel();
+        setCardLayers(false);
+        frontContainer.setTranslationX(0);
+        frontContainer.setTranslationY(0);
+
+        if (frontContent != null) {
+            frontContainer.removeView(frontContent);
+            frontContent = null;
+        }
+        frontId = Adapter.NO_ID;
+        if (backLive != null) {
+            backContainer.removeView(backLive);
+            backLive = null;
+        }
+        for (int level = 1; level < depth; level++) {
+            setSnapshot(level, null, Adapter.NO_ID, false);
+        }
+        empty.removeAllViews();
+        empty.setVisibility(GONE);
+
+        // the cached snapshots and the views belong to the items of the previous adapter
+        snapshotCache.evictAll();
+        rewindBuffer.clear();
+        viewPool.clear();
+        removedCount = 0;
+    }
+
+    /**
+     * Snapshot the back card now, the deeper cards are snapshot lazily afterwards.
+     *
+     * @param all true to refresh all the deeper cards, false to only fill the missing ones
+     */
+    private void fillBack(boolean all) {
+        fillBack(all ? ~0 : 0);
+    }
+
+    /**
+     * Snapshot the back card now, the deeper cards are snapshot lazily afterwards.
+     *
+     * @param levels deeper cards to refresh (bit 2 for the third card...), the missing ones are always filled
+     */
+    private void fillBack(int levels) {
+        boolean traced = StackTrace.beginSection(StackTrace.FILL_BACK);
+        try {
+            for (int level = MIN_DEPTH; level < depth; level++) {
+                if ((levels & 1 << level) != 0 || snapshots[level] == null) {
+                    backContentOnGlobalLayoutListener.invalidate(level);
+                }
+            }
+            backContentOnGlobalLayoutListener.snapshot(1);
+        } finally {
+            StackTrace.endSection(traced);
+        }
+    }
+
+    /**
+     * Move every snapshot up after the first cards are removed.
+     *
+     * @param count number of levels to move up
+     */
+    private void shiftSnapshots(int count) {
+        for (int i = 0; i < count; i++) {
+            shiftSnapshots();
+        }
+    }
+
+    /**
+     * Move every snapshot one level up after the front card is removed.
+     *
+     * The low resolution snapshot of the third card is used by the back card
+     * until its full resolution snapshot is ready.
+     */
+    private void shiftSnapshots() {
+        backContentOnGlobalLayoutListener.shift();
+        Drawable old = snapshots[1];
+        long oldId = snapshotIds[1];
+        boolean oldFull = fullSnapshots[1];
+        for (int level = 1; level < depth - 1; level++) {
+            snapshots[level] = snapshots[level + 1];
+            snapshotIds[level] = snapshotIds[level + 1];
+            fullSnapshots[level] = fullSnapshots[level + 1];
+            getLevelContent(level).setImageDrawable(snapshots[level]);
+        }
+        snapshots[depth - 1] = null;
+        snapshotIds[depth - 1] = Adapter.NO_ID;
+        fullSnapshots[depth - 1] = false;
+        getLevelContent(depth - 1).setImageDrawable(null);
+        releaseSnapshot(old, oldFull ? oldId : Adapter.NO_ID);
+    }
+
+    /**
+     * Move every snapshot one level down when the front card is rewound,
+     * the current front card becomes the back card.
+     *
+     * @param front view of the current front card
+     */
+    private void unshiftSnapshots(View front) {
+        backContentOnGlobalLayoutListener.unshift();
+        Drawable last = snapshots[depth - 1];
+        long lastId = snapshotIds[depth - 1];
+        boolean lastFull = fullSnapshots[depth - 1];
+        for (int level = depth - 1; level > 1; level--) {
+            snapshots[level] = snapshots[level - 1];
+            snapshotIds[level] = snapshotIds[level - 1];
+            fullSnapshots[level] = fullSnapshots[level - 1];
+            getLevelContent(level).setImageDrawable(snapshots[level]);
+        }
+        snapshots[1] = null;
+        snapshotIds[1] = Adapter.NO_ID;
+        fullSnapshots[1] = false;
+        releaseSnapshot(last, lastFull ? lastId : Adapter.NO_ID);
+        if (liveBack) {
+            backContentOnGlobalLayoutListener.snapshot(1);
+            return;
+        }
+
+        // the live card may have changed since its snapshot was cached
+        if (frontId != Adapter.NO_ID) {
+            snapshotCache.remove(frontId);
+        }
+        Drawable snapshot = backContentOnGlobalLayoutListener.capture(front, null);
+        if (snapshot != null) {
+            setSnapshot(1, snapshot, frontId, true);
+        } else {
+            backContentOnGlobalLayoutListener.snapshot(1);
+        }
+        back.requestLayout();
+    }
+
+    /**
+     * @param level position of the card in the stack
+     * @param snapshot new snapshot
+     * @param id item id of the snapshot
+     * @param full true for a full resolution snapshot
+     */
+    private void setSnapshot(int level, Drawable snapshot, long id, boolean full) {
+        Drawable old = snapshots[level];
+        long oldId = snapshotIds[level];
+        boolean oldFull = fullSnapshots[level];
+        snapshots[level] = snapshot;
+        snapshotIds[level] = id;
+        fullSnapshots[level] = full;
+        getLevelContent(level).setImageDrawable(snapshot);
+        if (old != snapshot) {
+            // the snapshot of another item can be reused when it comes back
+            releaseSnapshot(old, oldFull && oldId != id ? oldId : Adapter.NO_ID);
+        } else {
+            // redrawn in place
+            getLevelContent(level).invalidate();
+        }
+        if (level >= MIN_DEPTH) {
+            updateDeepVisibility();
+        }
+    }
+
+    /**
+     * @param snapshot released snapshot
+     * @param id item id to cache the snapshot, 'NO_ID' to release it
+     */
+    private void releaseSnapshot(Drawable snapshot, long id) {
+        if (snapshot instanceof BitmapDrawable && id != Adapter.NO_ID) {
+            snapshotCache.put(id, (BitmapDrawable) snapshot);
+        } else if (snapshot instanceof BitmapDrawable) {
+            recycleSnapshot((BitmapDrawable) snapshot);
+        } else if (snapshot instanceof PictureDrawable) {
+            freePictures.add((PictureDrawable) snapshot);
+        }
+    }
+
+    /**
+     * @param position item position
+     *
+     * @return the item id if the adapter has stable ids, 'NO_ID' otherwise.
+     */
+    private long getItemId(int position) {
+        return adapter.hasStableIds() && position < adapter.getItemCount() ? adapter.getItemId(position) : Adapter.NO_ID;
+    }
+
+    /**
+     * @return number of visible cards, front card included.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Follow an item while the cards are swiped (e.g. an item bound at 'position' after 'getRemovedCount' removals).
+     *
+     * @return number of items removed by the StackView since the adapter was set, less the rewound ones.
+     */
+    int getRemovedCount() {
+        return removedCount;
+    }
+
+    boolean isBackSnapshotPending() {
+        return backContentOnGlobalLayoutListener.isPending(1);
+    }
+
+    private boolean usePictureSnapshots() {
+        return snapshotMode != SnapshotMode.BITMAP && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Render the moving cards in hardware layers while they are animated.
+     *
+     * @param enable true when a drag or a dismiss animation starts, false when it ends
+     */
+    private void setCardLayers(boolean enable) {
+        int layerType = enable && isHardwareAccelerated() ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE;
+        if (frontContainer.getLayerType() != layerType) {
+            frontContainer.setLayerType(layerType, null);
+            back.setLayerType(layerType, null);
+        }
+    }
+
+    /**
+     * @return true if the back card displays something.
+     */
+    private boolean hasBackCard() {
+        return liveBack ? backLive != null && backLive.getParent() == backContainer : backContent.getDrawable() != null;
+    }
+
+    /**
+     * Bind the live back card, in place with the payloads if any.
+     *
+     * @param payloads payloads of the item already bound, null to bind the item
+     */
+    private void bindLiveBack(List<Object> payloads) {
+        long start = System.nanoTime();
+        if (payloads != null && backLive != null && backLive.getParent() == backContainer) {
+            adapter.onBindView(backLive, Adapter.Position.SECOND, payloads);
+            metricsRecorder.onBindView();
+        } else {
+            backLive = adapter.createAndBindView(backContainer, Adapter.Position.SECOND);
+        }
+        metricsRecorder.addBindTime(System.nanoTime() - start);
+        // no snapshot, the id still tells which item is bound
+        setSnapshot(1, null, Adapter.NO_ID, false);
+        snapshotIds[1] = getItemId(1);
+    }
+
+    private ImageView getLevelContent(int level) {
+        return level == 1 ? backContent : deepContents[level - MIN_DEPTH];
+    }
+
+    /**
+     * Give the same size to every card (in the measure pass: the layout params are not set again).
+     */
+    private void setCardSize(int width, int height) {
+        if (width == cardWidth && height == cardHeight) {
+            return;
+        }
+        if (cardWidth != 0 && cardHeight != 0) {
+            // resized: the snapshots were drawn at the previous size, drawn again after the layout
+            snapshotCache.evictAll();
+            for (int level = 1; level < depth; level++) {
+                if (snapshots[level] != null) {
+                    backContentOnGlobalLayoutListener.invalidate(level);
+                }
+            }
+        }
+        cardWidth = width;
+        cardHeight = height;
+
+        setSize(frontContainer, width, height);
+        setSize(tmp, width, height);
+        setSize(back, width, height);
+        for (CardView deepContainer : deepContainers) {
+            setSize(deepContainer, width, height);
+        }
+        for (GhostCard ghost : ghosts) {
+            setSize(ghost.container, width, height);
+        }
+    }
+
+    private static void setSize(View view, int width, int height) {
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        lp.width = width;
+        lp.height = height;
+    }
+
+    private void updateDeepVisibility() {
+        int count = adapter != null ? adapter.getItemCount() : 0;
+        for (int i = 0; i < deepContainers.length; i++) {
+            int level = i + MIN_DEPTH;
+            deepContainers[i].setVisibility(level < count && snapshots[level] != null ? VISIBLE : GONE);
+        }
     }
 
     private void fillFront() {
-        frontContent = adapter.createAndBindView(frontContainer, Adapter.Position.FIRST);
-        ((MarginLayoutParams) frontContainer.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
-        requestLayout();
+        boolean traced = StackTrace.beginSection(StackTrace.FILL_FRONT);
+        try {
+            long start = System.nanoTime();
+            frontContent = adapter.createAndBindView(frontContainer, Adapter.Position.FIRST);
+            metricsRecorder.addBindTime(System.nanoTime() - start);
+            frontId = getItemId(0);
+            ((MarginLayoutParams) frontContainer.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
+            requestLayout();
+
+            frontContainerOnTouchListener.init();
+            frontContainer.setOnTouchListener(frontContainerOnTouchListener);
+        } finally {
+            StackTrace.endSection(traced);
+        }
+    }
+
+    /**
+     * Move the back card between its resting place (0) and the front card place (1).
+     *
+     * @param fraction reveal fraction
+     */
+    private void setBackReveal(float fraction) {
+        backReveal = fraction;
+        if (revealMode == RevealMode.PADDING) {
+            float hidden = 1.f - fraction;
+            back.setPadding(
+                    (int) (padding[0] * hidden),
+                    (int) (padding[1] * hidden),
+                    (int) (padding[2] * hidden),
+                    (int) (padding[3] * hidden));
+            back.requestLayout();
+        }
+        applyLevels();
+    }
+
+    /**
+     * Apply the render only transformations of the cards behind the front card.
+     * Each card moves one level up while the back card is revealed.
+     */
+    private void applyLevels() {
+        if (revealMode == RevealMode.TRANSLATION) {
+            setLevel(backContainer, 1.f - backReveal);
+        }
+        for (int i = 0; i < deepContainers.length; i++) {
+            setLevel(deepContainers[i], i + MIN_DEPTH - backReveal);
+        }
+    }
+
+    private void setLevel(View card, float level) {
+        int width = card.getWidth();
+        int height = card.getHeight();
+        if (width != 0 && height != 0) {
+            card.setScaleX(1.f - (padding[0] + padding[2]) * level / width);
+            card.setScaleY(1.f - (padding[1] + padding[3]) * level / height);
+            card.setTranslationX((padding[0] - padding[2]) * level / 2);
+            card.setTranslationY((padding[1] - padding[3]) * level / 2);
+        }
+    }
+
+    /**
+     * Give the bitmap of a snapshot back to the pool, its drawable is kept to wrap the bitmap again.
+     */
+    private void recycleSnapshot(BitmapDrawable snapshot) {
+        Bitmap bitmap = snapshot.getBitmap();
+        bitmapPool.put(bitmap);
+        if (!bitmap.isRecycled()) {
+            if (freeDrawables.size() == depth + GHOST_COUNT) {
+                freeDrawables.remove(0);
+            }
+            freeDrawables.add(snapshot);
+        }
+    }
+
+    /**
+     * @param bitmap bitmap taken from the pool or allocated
+     *
+     * @return the drawable which wrapped the bitmap before, a new one otherwise.
+     */
+    private BitmapDrawable wrapSnapshot(Bitmap bitmap) {
+        for (int i = freeDrawables.size() - 1; i >= 0; i--) {
+            BitmapDrawable drawable = freeDrawables.get(i);
+            if (drawable.getBitmap() == bitmap) {
+                return freeDrawables.remove(i);
+            }
+        }
+        return new BitmapDrawable(getResources(), bitmap);
+    }
+
+    private void remove(int count, final Direction direction) {
+        if (count <= 0) {
+            return;
+        }
+        switch (direction) {
+            case LEFT:
+                dismiss(-(frontContainer.getLeft() + frontContainer.getWidth()), 0, animDuration, count);
+                break;
+            case RIGHT:
+                dismiss(getWidth() - frontContainer.getLeft(), 0, animDuration, count);
+                break;
+        }
+    }
+
+    /**
+     * Throw the front card out and remove the dismissed items.
+     *
+     * A snapshot of the front card flies out in a ghost card while the next card is bound right away,
+     * so the next card can be dragged before the previous one is gone.
+     * Without snapshot, the front card itself is animated out and the items are removed at the end.
+     *
+     * @param x target horizontal translation
+     * @param y target vertical translation
+     * @param duration animation duration
+     * @param count number of dismissed items
+     */
+    private void dismiss(float x, float y, int duration, int count) {
+        if (frontState == FRONT_DISMISSING || adapter == null) {
+            return;
+        }
+        frontState = FRONT_IDLE;
+        settleAnim.animator.cancel();
+        metricsRecorder.onDismissStart();
+
+        Drawable snapshot = frontContent != null ? captureFront() : null;
+        if (snapshot != null) {
+            GhostCard ghost = ghosts[nextGhost];
+            nextGhost = (nextGhost + 1) % ghosts.length;
+            // the oldest ghost lands if all of them are flying
+            ghost.land();
+            ghost.traceCookie = StackTrace.beginAsync(StackTrace.DISMISS);
+            ghost.fly(snapshot, frontId, frontContainer.getTranslationX(), frontContainer.getTranslationY(), x, y, duration);
+            advance(count, x, y);
+        } else {
+            frontState = FRONT_DISMISSING;
+            if (actionEnable) {
+                removeActionView();
+            }
+            setCardLayers(true);
+            if (count == 1) {
+                backRevealAnim.animateTo(1, backContainer.getCardElevation());
+            }
+            // else the back card is not the next front card: it stays in place
+            removeAnimatorListener.init(count, x, y);
+            removeAnimatorListener.traceCookie = StackTrace.beginAsync(StackTrace.DISMISS);
+            dismissAnim.start(x, y, duration);
+        }
+    }
+
+    /**
+     * Draw the live front card with its action view: the cached snapshot of the item was taken
+     * when it was behind, before the changes made to the front card (e.g. a loaded image).
+     * The cached snapshot is released first, its bitmap is reused.
+     *
+     * @return a snapshot of the front card, null if not laid out.
+     */
+    private Drawable captureFront() {
+        if (frontId != Adapter.NO_ID) {
+            snapshotCache.remove(frontId);
+        }
+        return backContentOnGlobalLayoutListener.capture(frontContent, actionState != ACTION_HIDDEN ? frontAction : null);
+    }
+
+    /**
+     * Remove the dismissed items and bind the next cards.
+     *
+     * @param count number of dismissed items
+     * @param x exit horizontal translation of the front card
+     * @param y exit vertical translation of the front card
+     */
+    private void advance(int count, float x, float y) {
+        boolean traced = StackTrace.beginSection(StackTrace.DISMISS_END);
+        try {
+            engine.advance(count, adapter.getItemCount());
+            int removed = engine.removed;
+            if (engine.keepDismissed) {
+                keepDismissedCard(x, y);
+                adapter.remove();
+            } else if (removed > 0) {
+                rewindBuffer.recycle(viewPool);
+                adapter.remove(removed);
+            }
+            adapter.onRemoved(removed);
+            removedCount += removed;
+            notificationDispatcher.shift(removed);
+
+            hideActionView();
+            backRevealAnim.cancel();
+            backContainer.setCardElevation(0);
+            setCardLayers(false);
+            back.setVisibility(GONE);
+            if (engine.nextState == StackEngine.EMPTY) {
+                frontContainer.setVisibility(GONE);
+                frontId = Adapter.NO_ID;
+
+                View view = adapter.createAndBindEmptyView(empty);
+                if (view != null) {
+                    empty.addView(view, -1);
+                    empty.setVisibility(VISIBLE);
+                }
+            }
+            if ((engine.bindLevels & 2) != 0) {
+                back.setVisibility(VISIBLE);
+                shiftSnapshots(engine.shiftCount);
+                fillBack(engine.snapshotLevels);
+                setBackReveal(0);
+            }
+            if ((engine.bindLevels & 1) != 0) {
+                fillFront();
+            }
+            frontContainer.setTranslationX(0);
+            frontContainer.setTranslationY(0);
+            updateDeepVisibility();
+        } finally {
+            StackTrace.endSection(traced);
+        }
+    }
+
+    /**
+     * Move the dismissed front card view to the rewind buffer, the next front card uses another view.
+     */
+    private void keepDismissedCard(float x, float y) {
+        if (rewindBuffer.capacity > 0 && frontContent != null) {
+            frontContainer.removeView(frontContent);
+            rewindBuffer.push(frontContent, x, y, viewPool);
+            frontContent = null;
+        }
+    }
+
+    private CardView initCardView(Context ctx, int color, float elevation, float radius, boolean compatPadding) {
+        return initCardView(new CardView(ctx), color, elevation, radius, compatPadding);
+    }
+
+    private CardView initCardView(CardView card, int color, float elevation, float radius, boolean compatPadding) {
+        card.setLayoutParams(new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+
+        card.setCardElevation(elevation);
+        card.setCardBackgroundColor(color);
+        card.setRadius(radius);
+        card.setUseCompatPadding(compatPadding);
+
+        return card;
+    }
+
+    private static void addOnGlobalLayoutListener(View view, ViewTreeObserver.OnGlobalLayoutListener listener) {
+        view.getViewTreeObserver().addOnGlobalLayoutListener(listener);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void removeOnGlobalLayoutListener(View view, ViewTreeObserver.OnGlobalLayoutListener listener) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            view.getViewTreeObserver().removeOnGlobalLayoutListener(listener);
+        } else {
+            view.getViewTreeObserver().removeGlobalOnLayoutListener(listener);
+        }
+    }
+
+    private void removeActionView() {
+        if (actionState == ACTION_SHOWING || actionState == ACTION_SHOWN) {
+            actionState = ACTION_HIDING;
+            addActionAnim.cancel();
+            actionFrom = frontAction.getFraction();
+            removeActionAnim.start();
+        }
+    }
+
+    private void addActionView() {
+        if (actionState == ACTION_HIDDEN || actionState == ACTION_HIDING) {
+            actionState = ACTION_SHOWING;
+            removeActionAnim.cancel();
+            actionFrom = frontAction.getFraction();
+            addActionAnim.start();
+        }
+    }
+
+    /**
+     * Hide the action view right away (e.g. the front card is bound to the next item).
+     */
+    private void hideActionView() {
+        if (actionState != ACTION_HIDDEN) {
+            actionState = ACTION_HIDDEN;
+            addActionAnim.cancel();
+            removeActionAnim.cancel();
+            frontAction.setFraction(0.f);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setTextAppearance(Context context, TextView view, int resource) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            view.setTextAppearance(resource);
+        } else {
+            view.setTextAppearance(context, resource);
+        }
+    }
+
+    /**
+     * Hidden card used to snapshot the cards behind the front card.
+     *
+     * Collect the region invalidated by its content between 'startTracking' and 'stopTracking'.
+     * It is never drawn on screen, so the invalidations do not need to reach its parent.
+     */
+    private static class SnapshotCardView extends CardView {
+        private final Rect dirty;
+        private boolean tracking;
+        private boolean all;
+
+        SnapshotCardView(Context context) {
+            super(context);
+            this.dirty = new Rect();
+        }
+
+        void startTracking() {
+            dirty.setEmpty();
+            all = false;
+            tracking = true;
+        }
+
+        /**
+         * @return the invalidated region in the coordinates of the content, null if unknown.
+         */
+        Rect stopTracking() {
+            tracking = false;
+            return all ? null : dirty;
+        }
+
+        @Override
+        public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+            if (tracking) {
+                if (dirty != null) {
+                    this.dirty.union(dirty);
+                } else {
+                    all = true;
+                }
+            }
+            return super.invalidateChildInParent(location, dirty);
+        }
+
+        /**
+         * Hardware accelerated invalidation (Android O and above).
+         */
+        @SuppressWarnings("unused")
+        public void onDescendantInvalidated(View child, View target) {
+            if (!tracking || all) {
+                return;
+            }
+
+            int left = 0, top = 0;
+            for (View view = target; view != child; view = (View) view.getParent()) {
+                View parent = (View) view.getParent();
+                if (!view.getMatrix().isIdentity()) {
+                    all = true;
+                    return;
+                }
+                left += view.getLeft() - parent.getScrollX();
+                top += view.getTop() - parent.getScrollY();
+            }
+            dirty.union(left, top, left + target.getWidth(), top + target.getHeight());
+        }
+    }
+
+    /***************/
+    /** listeners **/
+    /***************/
+
+    /**
+     * Snapshot the cards behind the front card, one at a time through the hidden 'tmp' card.
+     *
+     * The back card is snapshot in full resolution as soon as requested,
+     * the deeper cards are snapshot in reduced resolution, one per frame, when nothing else is pending.
+     */
+    private static class BackContentOnGlobalLayoutListener
+            implements ViewTreeObserver.OnGlobalLayoutListener, Runnable {
+        private final StackView self;
+        private final FrameLayout back;
+        private final Canvas canvas;
+        private final boolean[] pending;
+
+        private View view;
+        private int level;
+        // level of the item bound to 'view', 0 if none
+        private int boundLevel;
+        private boolean partial;
+
+        private BackContentOnGlobalLayoutListener(StackView self, FrameLayout back) {
+            this.self = self;
+            this.back = back;
+            this.canvas = new Canvas();
+            this.pending = new boolean[self.depth];
+        }
+
+        /**
+         * Snapshot a card right now.
+         *
+         * @param level position of the card in the stack
+         */
+        void snapshot(int level) {
+            pending[level] = true;
+            start(level);
+        }
+
+        /**
+         * Drop the pending snapshots and the card bound to 'tmp'.
+         */
+        void clear() {
+            if (view != null) {
+                removeOnGlobalLayoutListener(view, this);
+                view = null;
+            }
+            self.removeCallbacks(this);
+            Arrays.fill(pending, false);
+            level = 0;
+            boundLevel = 0;
+            partial = false;
+            self.tmp.stopTracking();
+            self.tmp.removeAllViews();
+        }
+
+        /**
+         * Snapshot a card as soon as nothing else is pending.
+         *
+         * @param level position of the card in the stack
+         */
+        void invalidate(int level) {
+            pending[level] = true;
+            if (level == boundLevel) {
+                boundLevel = 0;
+            }
+            if (this.level == 0) {
+                self.removeCallbacks(this);
+                self.post(this);
+            }
+        }
+
+        /**
+         * Bind the payloads to the card kept in 'tmp' and redraw only its dirty region into its snapshot.
+         * Snapshot the whole card if 'tmp' holds another card or if the snapshot is not a bitmap.
+         *
+         * @param level position of the card in the stack
+         * @param payloads payloads of the card
+         */
+        void update(int level, List<Object> payloads) {
+            if (level == 1 && self.liveBack) {
+                self.bindLiveBack(payloads);
+                return;
+            }
+            if (this.level != 0 || level != boundLevel || !(self.snapshots[level] instanceof BitmapDrawable)) {
+                snapshot(level);
+                return;
+            }
+
+            pending[level] = true;
+            this.level = level;
+            this.partial = true;
+            self.tmp.startTracking();
+            long start = System.nanoTime();
+            self.adapter.onBindView(view, Adapter.Position.at(level), payloads);
+            self.metricsRecorder.addBindTime(System.nanoTime() - start);
+            self.metricsRecorder.onBindView();
+
+            if (view.isLayoutRequested()) {
+                addOnGlobalLayoutListener(view, this);
+            } else {
+                onGlobalLayout();
+            }
+        }
+
+        /**
+         * The first card was removed: the card bound to 'view' moved one level up.
+         */
+        void shift() {
+            boundLevel = boundLevel > 1 ? boundLevel - 1 : 0;
+        }
+
+        /**
+         * An item was inserted back at the first position: every card moved one level down.
+         */
+        void unshift() {
+            int current = level;
+            if (current != 0) {
+                // the card in progress is now one level deeper
+                removeOnGlobalLayoutListener(view, this);
+                level = 0;
+                partial = false;
+            }
+            boundLevel = boundLevel != 0 && boundLevel < pending.length - 1 ? boundLevel + 1 : 0;
+            for (int i = pending.length - 1; i > 1; i--) {
+                pending[i] = pending[i - 1];
+            }
+            pending[1] = false;
+            if (current != 0 && current < pending.length - 1) {
+                invalidate(current + 1);
+            }
+        }
+
+        /**
+         * Full resolution snapshot of a bound card view (e.g. the front card).
+         *
+         * @param source laid out card view
+         * @param overlay foreground of the card drawn over the view (bounds in the card coordinates), null for none
+         *
+         * @return the snapshot, null if the view is not laid out.
+         */
+        Drawable capture(View source, Drawable overlay) {
+            if (source.getWidth() == 0 || source.getHeight() == 0) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Drawable snapshot;
+            boolean traced = StackTrace.beginSection(StackTrace.SNAPSHOT);
+            try {
+                if (self.usePictureSnapshots()) {
+                    snapshot = recordPicture(source, overlay);
+                } else {
+                    BitmapDrawable drawable = drawBitmap(source, 0, 1.f);
+                    if (overlay != null) {
+                        canvas.setBitmap(drawable.getBitmap());
+                        drawOverlay(canvas, source, overlay);
+                        canvas.setBitmap(null);
+                    }
+                    snapshot = drawable;
+                }
+            } finally {
+                StackTrace.endSection(traced);
+            }
+            self.metricsRecorder.addSnapshotTime(System.nanoTime() - start);
+            return snapshot;
+        }
+
+        boolean isPending(int level) {
+            return pending[level];
+        }
+
+        private void start(int level) {
+            if (view != null) {
+                removeOnGlobalLayoutListener(view, this);
+            }
+
+            if (level == 1 && self.liveBack) {
+                // bound in place, nothing to snapshot
+                this.level = 0;
+                pending[level] = false;
+                self.bindLiveBack(null);
+                self.removeCallbacks(this);
+                self.post(this);
+                return;
+            }
+
+            this.level = level;
+            this.partial = false;
+            if (useCachedSnapshot(level)) {
+                return;
+            }
+            long start = System.nanoTime();
+            this.view = self.adapter.createAndBindView(self.tmp, Adapter.Position.at(level));
+            self.metricsRecorder.addBindTime(System.nanoTime() - start);
+            if (view == null) {
+                this.level = 0;
+                this.boundLevel = 0;
+                return;
+            }
+            this.boundLevel = level;
+
+            addOnGlobalLayoutListener(view, this);
+            // a rebound view may keep its size, the snapshot still needs a layout pass
+            view.requestLayout();
+        }
+
+        @Override
+        public void run() {
+            if (level != 0) {
+                return;
+            }
+            int count = self.adapter != null ? self.adapter.getItemCount() : 0;
+            for (int i = 1; i < pending.length; i++) {
+                if (pending[i]) {
+                    if (i < count) {
+                        start(i);
+                        return;
+                    }
+                    pending[i] = false;
+                }
+            }
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            removeOnGlobalLayoutListener(view, this);
+            int current = level;
+            level = 0;
+            if (current == 0) {
+                return;
+            }
+            pending[current] = false;
+
+            if (view.getWidth() != 0 && view.getHeight() != 0) {
+                long start = System.nanoTime();
+                float scale = current == 1 ? 1.f : self.deepScale;
+                Drawable snapshot;
+                boolean traced = StackTrace.beginSection(StackTrace.SNAPSHOT);
+                try {
+                    if (partial) {
+                        partial = false;
+                        snapshot = redraw(current, scale, self.tmp.stopTracking());
+                    } else if (self.usePictureSnapshots()) {
+                        snapshot = recordPicture(view, null);
+                    } else {
+                        snapshot = drawBitmap(view, current, scale);
+                    }
+                } finally {
+                    StackTrace.endSection(traced);
+                }
+                self.metricsRecorder.addSnapshotTime(System.nanoTime() - start);
+
+                boolean inPlace = snapshot == self.snapshots[current];
+                self.setSnapshot(current, snapshot, self.getItemId(current), scale == 1.f);
+                if (current == 1 && !inPlace) {
+                    back.requestLayout();
+                }
+            }
+
+            // next card on the next frame
+            self.removeCallbacks(this);
+            self.post(this);
+        }
+
+        /**
+         * Display the cached snapshot of the item, if any, without binding it.
+         *
+         * @return true if the card is snapshot.
+         */
+        private boolean useCachedSnapshot(int level) {
+            long id = self.getItemId(level);
+            BitmapDrawable cached = id != Adapter.NO_ID ? self.snapshotCache.take(id) : null;
+            if (cached == null) {
+                return false;
+            }
+
+            this.level = 0;
+            pending[level] = false;
+            if (boundLevel == level) {
+                boundLevel = 0;
+            }
+            self.setSnapshot(level, cached, id, true);
+            if (level == 1) {
+                back.requestLayout();
+            }
+
+            // next card on the next frame
+            self.removeCallbacks(this);
+            self.post(this);
+            return true;
+        }
+
+        /**
+         * Software draw of a view into the bitmap of the current snapshot if it has the right size,
+         * into a pooled bitmap otherwise.
+         *
+         * @param level level of the snapshot, 0 (front card) for a new bitmap
+         */
+        private BitmapDrawable drawBitmap(View view, int level, float scale) {
+            int width = Math.max(1, (int) (view.getWidth() * scale));
+            int height = Math.max(1, (int) (view.getHeight() * scale));
+
+            // the snapshot of another item is released (and cached) instead
+            BitmapDrawable drawable = level > 0 && self.snapshotIds[level] == self.getItemId(level)
+                    ? getSnapshot(level, width, height)
+                    : null;
+            Bitmap bitmap;
+            if (drawable != null) {
+                bitmap = drawable.getBitmap();
+                bitmap.eraseColor(Color.TRANSPARENT);
+            } else {
+                bitmap = self.bitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+                if (bitmap == null) {
+                    bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    self.metricsRecorder.onBitmapAllocation();
+                }
+                drawable = self.wrapSnapshot(bitmap);
+            }
+            draw(view, bitmap, null);
+
+            return drawable;
+        }
+
+        /**
+         * Software draw of the dirty region of the view into the bitmap of the current snapshot.
+         *
+         * @param dirty region to draw, in the view coordinates, null for the whole view
+         */
+        private Drawable redraw(int level, float scale, Rect dirty) {
+            int width = Math.max(1, (int) (view.getWidth() * scale));
+            int height = Math.max(1, (int) (view.getHeight() * scale));
+
+            BitmapDrawable drawable = getSnapshot(level, width, height);
+            if (drawable == null || dirty == null) {
+                return drawBitmap(view, level, scale);
+            }
+            if (!dirty.isEmpty()) {
+                draw(view, drawable.getBitmap(), dirty);
+            }
+            return drawable;
+        }
+
+        private void draw(View view, Bitmap bitmap, Rect clip) {
+            canvas.setBitmap(bitmap);
+            canvas.save();
+            canvas.scale((float) bitmap.getWidth() / view.getWidth(), (float) bitmap.getHeight() / view.getHeight());
+            if (clip != null) {
+                canvas.clipRect(clip);
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            }
+            view.draw(canvas);
+            canvas.restore();
+            canvas.setBitmap(null);
+        }
+
+        /**
+         * @return the current bitmap snapshot of the level if it can be drawn again, null otherwise.
+         */
+        private BitmapDrawable getSnapshot(int level, int width, int height) {
+            Drawable snapshot = self.snapshots[level];
+            if (snapshot instanceof BitmapDrawable) {
+                Bitmap bitmap = ((BitmapDrawable) snapshot).getBitmap();
+                if (bitmap != null && bitmap.isMutable() && !bitmap.isRecycled()
+                        && bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    return (BitmapDrawable) snapshot;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Record the draw commands of a view, replayed on the GPU by the hardware canvas.
+         * The recorded pictures reference the bitmaps drawn by the view, they must not be recycled.
+         */
+        private Drawable recordPicture(View view, Drawable overlay) {
+            PictureDrawable drawable = self.freePictures.isEmpty()
+                    ? new PictureDrawable(new Picture())
+                    : self.freePictures.remove(self.freePictures.size() - 1);
+
+            Picture picture = drawable.getPicture();
+            Canvas recording = picture.beginRecording(view.getWidth(), view.getHeight());
+            view.draw(recording);
+            if (overlay != null) {
+                drawOverlay(recording, view, overlay);
+            }
+            picture.endRecording();
+
+            return drawable;
+        }
+
+        /**
+         * Draw the foreground of the card over the view, clipped by the canvas to the view.
+         */
+        private static void drawOverlay(Canvas canvas, View view, Drawable overlay) {
+            int count = canvas.save();
+            canvas.translate(-view.getLeft(), -view.getTop());
+            overlay.draw(canvas);
+            canvas.restoreToCount(count);
+        }
+    }
+
+    /**
+     * Last dismissed card views, still bound to their item, with the translation they left the stack with.
+     * The evicted views go to the recycled view pool.
+     */
+    private static class RewindBuffer {
+        private final ArrayList<Card> cards;
+        // entries reused by 'push'
+        private final ArrayList<Card> free;
+        private int capacity;
+
+        RewindBuffer(int capacity) {
+            this.cards = new ArrayList<>(capacity);
+            this.free = new ArrayList<>(capacity);
+            this.capacity = capacity;
+        }
+
+        void setCapacity(int capacity, RecycledViewPool pool) {
+            this.capacity = capacity;
+            while (cards.size() > capacity) {
+                pool.putRecycledView(release(cards.remove(0)));
+            }
+        }
 
-        if (!backInit) {
-            backInit = true;
-            addOnGlobalLayoutListener(frontContainer, new ViewTreeObserver.OnGlobalLayoutListener() {
-                @Override
-                public void onGlobalLayout() {
-                    removeOnGlobalLayoutListener(frontContainer, this);
+        void push(View view, float x, float y, RecycledViewPool pool) {
+            if (cards.size() == capacity) {
+                pool.putRecycledView(release(cards.remove(0)));
+            }
+            Card card = free.isEmpty() ? new Card() : free.remove(free.size() - 1);
+            card.view = view;
+            card.x = x;
+            card.y = y;
+            cards.add(card);
+        }
 
-                    int width = frontContainer.getWidth();
-                    int height = frontContainer.getHeight();
+        /**
+         * @return the last card, valid until the next 'push'.
+         */
+        Card pop() {
+            Card card = cards.remove(cards.size() - 1);
+            free.add(card);
+            return card;
+        }
 
-                    frontContainer.setLayoutParams(new FrameLayout.LayoutParams(width, height));
-                    frontAction.setLayoutParams(new FrameLayout.LayoutParams(width, height));
-                    tmp.setLayoutParams(new FrameLayout.LayoutParams(width, height));
-                    back.setLayoutParams(new FrameLayout.LayoutParams(width, height));
+        boolean isEmpty() {
+            return cards.isEmpty();
+        }
 
-                    ((MarginLayoutParams) frontContainer.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
-                    ((MarginLayoutParams) back.getLayoutParams()).setMargins(margin[0], margin[1], margin[2], margin[3]);
+        void clear() {
+            while (!cards.isEmpty()) {
+                release(cards.remove(cards.size() - 1));
+            }
+        }
 
-                    frontContainer.requestLayout();
-                    frontAction.requestLayout();
-                    tmp.requestLayout();
-                    back.requestLayout();
-                }
-            });
+        /**
+         * @return the view of the released entry.
+         */
+        private View release(Card card) {
+            View view = card.view;
+            card.view = null;
+            free.add(card);
+            return view;
         }
 
-        frontContainerOnTouchListener.init();
-        frontContainer.setOnTouchListener(frontContainerOnTouchListener);
-    }
+        void recycle(RecycledViewPool pool) {
+            while (!cards.isEmpty()) {
+                pool.putRecycledView(release(cards.remove(cards.size() - 1)));
+            }
+        }
 
-    private void remove(final Direction direction) {
-        removeDirectionAnim.direction = direction;
-        removeDirectionAnim.start();
+        static class Card {
+            View view;
+            float x, y;
+        }
     }
 
-    private void remove(float x, float y, int duration) {
-        if (actionEnable) {
-            removeActionView();
+    /**
+     * Full resolution snapshots of the items out of the stack, by item id, bounded in bytes.
+     * The evicted snapshots go back to the bitmap pool.
+     */
+    private static class SnapshotCache extends LruCache<Long, BitmapDrawable> {
+        private final StackView self;
+        private boolean taking;
+
+        SnapshotCache(StackView self, int maxSize) {
+            super(Math.max(1, maxSize));
+            this.self = self;
+        }
+
+        /**
+         * Remove the snapshot of an item to display it.
+         *
+         * @param id item id
+         *
+         * @return the snapshot, null if not cached.
+         */
+        BitmapDrawable take(long id) {
+            taking = true;
+            try {
+                return remove(id);
+            } finally {
+                taking = false;
+            }
+        }
+
+        @Override
+        protected int sizeOf(Long id, BitmapDrawable snapshot) {
+            return snapshot.getBitmap().getByteCount();
         }
 
-        ViewPropertyAnimator animator = frontContainer.animate().x(x).y(y).setDuration(duration);
-        removeAnimatorListener.init(adapter);
-        animator.setListener(removeAnimatorListener);
-        animator.start();
+        @Override
+        protected void entryRemoved(boolean evicted, Long id, BitmapDrawable oldValue, BitmapDrawable newValue) {
+            if (!taking && oldValue != newValue) {
+                self.recycleSnapshot(oldValue);
+            }
+        }
     }
 
-    private CardView initCardView(Context ctx, int color, float elevation, float radius, boolean compatPadding) {
-        CardView card = new CardView(ctx);
-        card.setLayoutParams(new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+    /**
+     * Coalesce the notifications of the adapter.
+     *
+     * The dirty levels and the stale cached snapshots are accumulated from any thread and applied once,
+     * on the next frame, through one shared Handler and one Choreographer callback (next message on Android ICS).
+     */
+    private static class NotificationDispatcher implements Runnable {
+        // stale ids kept until the next frame, all the cached snapshots are evicted beyond
+        private static final int STALE_IDS = 8;
 
-        card.setCardElevation(elevation);
-        card.setCardBackgroundColor(color);
-        card.setRadius(radius);
-        card.setUseCompatPadding(compatPadding);
+        private final StackView self;
+        private final Handler handler;
+        private final FrameCallback frameCallback;
+
+        private int levels;
+        private int movedLevels;
+        private int changedLevels;
+        private int partialLevels;
+        private final List<List<Object>> payloads;
+        private final List<List<Object>> flushed;
+        private final long[] staleIds;
+        private final long[] flushedIds;
+        private int staleIdCount;
+        private boolean allStale;
+        private boolean scheduled;
+
+        NotificationDispatcher(StackView self) {
+            this.self = self;
+            this.payloads = new ArrayList<>(self.depth);
+            this.flushed = new ArrayList<>(self.depth);
+            for (int level = 0; level < self.depth; level++) {
+                this.payloads.add(new ArrayList<>());
+                this.flushed.add(new ArrayList<>());
+            }
+            this.staleIds = new long[STALE_IDS];
+            this.flushedIds = new long[STALE_IDS];
+            this.handler = new Handler(Looper.getMainLooper());
+            this.frameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                    ? new FrameCallback(this)
+                    : null;
+        }
 
-        return card;
-    }
+        /**
+         * @param levels dirty levels to apply on the next frame
+         * @param payload change of the levels, null for a complete change
+         * @param structural true for an insertion or a removal
+         */
+        void dispatch(int levels, Object payload, boolean structural) {
+            synchronized (this) {
+                if (structural) {
+                    this.levels |= levels;
+                    movedLevels |= levels;
+                } else if (payload == null) {
+                    this.levels |= levels;
+                    changedLevels |= levels;
+                } else {
+                    for (int level = 0; level < payloads.size(); level++) {
+                        if ((levels & 1 << level) != 0 && (this.levels & 1 << level) == 0) {
+                            payloads.get(level).add(payload);
+                            partialLevels |= 1 << level;
+                        }
+                    }
+                }
+            }
+            schedule();
+        }
 
-    private static void addOnGlobalLayoutListener(View view, ViewTreeObserver.OnGlobalLayoutListener listener) {
-        view.getViewTreeObserver().addOnGlobalLayoutListener(listener);
-    }
+        /**
+         * @param id item whose cached snapshot is stale, evicted on the next frame
+         */
+        void evict(long id) {
+            synchronized (this) {
+                if (staleIdCount < staleIds.length) {
+                    staleIds[staleIdCount++] = id;
+                } else {
+                    allStale = true;
+                }
+            }
+            schedule();
+        }
 
-    @SuppressWarnings("deprecation")
-    private static void removeOnGlobalLayoutListener(View view, ViewTreeObserver.OnGlobalLayoutListener listener) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            view.getViewTreeObserver().removeOnGlobalLayoutListener(listener);
-        } else {
-            view.getViewTreeObserver().removeGlobalOnLayoutListener(listener);
+        /**
+         * Evict all the cached snapshots on the next frame.
+         */
+        void evictAll() {
+            synchronized (this) {
+                allStale = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Keep the pending levels on the same items after the first 'count' items are removed.
+         *
+         * @param count number of removed items, negative for inserted items
+         */
+        synchronized void shift(int count) {
+            levels = shift(levels, count);
+            movedLevels = shift(movedLevels, count);
+            changedLevels = shift(changedLevels, count);
+            partialLevels = shift(partialLevels, count);
+            // 'addAll' copies the list, even empty
+            if (count > 0) {
+                for (int level = 0; level < payloads.size(); level++) {
+                    payloads.get(level).clear();
+                    if (level + count < payloads.size() && !payloads.get(level + count).isEmpty()) {
+                        payloads.get(level).addAll(payloads.get(level + count));
+                    }
+                }
+            } else {
+                for (int level = payloads.size() - 1; level >= 0; level--) {
+                    payloads.get(level).clear();
+                    if (level + count >= 0 && !payloads.get(level + count).isEmpty()) {
+                        payloads.get(level).addAll(payloads.get(level + count));
+                    }
+                }
+            }
         }
-    }
 
-    private AtomicBoolean onClose = new AtomicBoolean(false);
-    private AtomicBoolean onOpen = new AtomicBoolean(false);
+        /**
+         * Drop the pending levels (e.g. the adapter is replaced).
+         */
+        synchronized void clear() {
+            levels = 0;
+            movedLevels = 0;
+            changedLevels = 0;
+            partialLevels = 0;
+            for (List<Object> list : payloads) {
+                list.clear();
+            }
+            staleIdCount = 0;
+            allStale = false;
+        }
 
-    private void removeActionView() {
-        if (frontContainer.indexOfChild(frontAction) != -1 && onClose.compareAndSet(false, true)) {
-            frontAction.setAlpha(1.f);
-            removeActionAnim.start();
+        private int shift(int levels, int count) {
+            return count >= 0 ? levels >>> count : (levels << -count) & ((1 << payloads.size()) - 1);
         }
-    }
 
-    private void addActionView() {
-        if (frontContainer.indexOfChild(frontAction) == -1 && onOpen.compareAndSet(false, true)) {
-            frontAction.setAlpha(0.f);
-            frontContainer.addView(frontAction);
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
 
-            addActionAnim.start();
+            if (frameCallback != null && Looper.myLooper() == Looper.getMainLooper()) {
+                frameCallback.post();
+            } else {
+                handler.post(this);
+            }
         }
-    }
 
-    @SuppressWarnings("deprecation")
-    private void setTextAppearance(Context context, TextView view, int resource) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            view.setTextAppearance(resource);
-        } else {
-            view.setTextAppearance(context, resource);
+        @Override
+        public void run() {
+            if (frameCallback != null) {
+                frameCallback.post();
+            } else {
+                flush();
+            }
+        }
+
+        private void flush() {
+            int dirty, moved, partial, staleCount;
+            boolean all;
+            synchronized (this) {
+                dirty = levels;
+                moved = movedLevels & ~changedLevels;
+                // a complete change includes the partial ones
+                partial = partialLevels & ~levels;
+                for (int level = 0; level < payloads.size(); level++) {
+                    if ((partial & 1 << level) != 0) {
+                        flushed.get(level).addAll(payloads.get(level));
+                    }
+                    payloads.get(level).clear();
+                }
+                staleCount = staleIdCount;
+                System.arraycopy(staleIds, 0, flushedIds, 0, staleCount);
+                all = allStale;
+                levels = 0;
+                movedLevels = 0;
+                changedLevels = 0;
+                partialLevels = 0;
+                staleIdCount = 0;
+                allStale = false;
+                scheduled = false;
+            }
+            // before the dirty cards are snapshot again
+            if (all) {
+                self.snapshotCache.evictAll();
+            } else {
+                for (int i = 0; i < staleCount; i++) {
+                    self.snapshotCache.remove(flushedIds[i]);
+                }
+            }
+            if ((dirty != 0 || partial != 0) && self.adapter != null) {
+                self.notifyDataSetChanged(dirty, moved, partial, flushed);
+            }
+            for (List<Object> list : flushed) {
+                list.clear();
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        private static class FrameCallback implements Choreographer.FrameCallback {
+            private final NotificationDispatcher dispatcher;
+            private final Choreographer choreographer;
+
+            FrameCallback(NotificationDispatcher dispatcher) {
+                this.dispatcher = dispatcher;
+                this.choreographer = Choreographer.getInstance();
+            }
+
+            void post() {
+                choreographer.postFrameCallback(this);
+            }
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                dispatcher.flush();
+            }
         }
     }
 
-    /***************/
-    /** listeners **/
-    /***************/
+    /**
+     * Trim level forwarding, registered on the application while attached.
+     */
+    private static class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        private final StackView self;
 
-    private static class BackContentOnGlobalLayoutListener
-            implements ViewTreeObserver.OnGlobalLayoutListener {
-        private final FrameLayout back;
-        private final ImageView backContent;
+        TrimMemoryCallbacks(StackView self) {
+            this.self = self;
+        }
 
-        private View view;
+        @Override
+        public void onTrimMemory(int level) {
+            self.trimMemory(level);
+        }
 
-        private BackContentOnGlobalLayoutListener(FrameLayout back, ImageView backContent) {
-            this.back = back;
-            this.backContent = backContent;
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {}
+
+        /**
+         * May be called in the foreground: only the caches are released.
+         */
+        @Override
+        public void onLowMemory() {
+            self.trimMemory(TRIM_MEMORY_RUNNING_CRITICAL);
         }
+    }
 
-        void init(View view) {
+    /**
+     * Foreground of the front card drawing the action view.
+     *
+     * The view is never attached: it is laid out when the card size changes,
+     * then only drawn with the alpha of the action animations (no layout pass while dragging).
+     */
+    private static class ActionDrawable extends Drawable {
+        private final View view;
+        private float fraction;
+
+        ActionDrawable(View view) {
             this.view = view;
         }
 
+        float getFraction() {
+            return fraction;
+        }
+
+        void setFraction(float fraction) {
+            if (this.fraction != fraction) {
+                this.fraction = fraction;
+                invalidateSelf();
+            }
+        }
+
         @Override
-        public void onGlobalLayout() {
-            removeOnGlobalLayoutListener(view, this);
+        protected void onBoundsChange(Rect bounds) {
+            view.measure(MeasureSpec.makeMeasureSpec(bounds.width(), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(bounds.height(), MeasureSpec.EXACTLY));
+            view.layout(0, 0, bounds.width(), bounds.height());
+        }
 
-            if (view.getWidth() != 0 && view.getHeight() != 0) {
-                Bitmap bitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
-                Canvas canvas = new Canvas(bitmap);
-                view.draw(canvas);
+        @Override
+        public void draw(Canvas canvas) {
+            int alpha = (int) (255 * fraction);
+            if (alpha <= 0) {
+                return;
+            }
+            Rect bounds = getBounds();
+            int count = alpha < 255
+                    ? canvas.saveLayerAlpha(bounds.left, bounds.top, bounds.right, bounds.bottom, alpha, Canvas.ALL_SAVE_FLAG)
+                    : canvas.save();
+            canvas.translate(bounds.left, bounds.top);
+            view.draw(canvas);
+            canvas.restoreToCount(count);
+        }
 
-                backContent.setImageBitmap(bitmap);
-                back.requestLayout();
+        @Override
+        public void setAlpha(int alpha) {
+            setFraction(alpha / 255.f);
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {}
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+
+    /**
+     * Snapshot of a dismissed front card flying out of the stack,
+     * while the front card is already bound to the next item.
+     */
+    private static class GhostCard extends AnimatorListenerAdapter {
+        private final StackView self;
+        final CardView container;
+        private final ImageView content;
+        private final MoveAnimator move;
+
+        private Drawable snapshot;
+        private long id;
+        private int traceCookie;
+
+        GhostCard(StackView self, CardView container) {
+            this.self = self;
+            this.container = container;
+            this.container.setVisibility(INVISIBLE);
+
+            this.content = new ImageView(container.getContext());
+            this.content.setLayoutParams(new FrameLayout.LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            this.content.setScaleType(ImageView.ScaleType.FIT_XY);
+            this.container.addView(content);
+
+            this.move = new MoveAnimator(container);
+            this.move.animator.addListener(this);
+        }
+
+        boolean isFlying() {
+            return snapshot != null;
+        }
+
+        /**
+         * @param snapshot snapshot of the front card
+         * @param id item id of the front card
+         */
+        void fly(Drawable snapshot, long id, float fromX, float fromY, float toX, float toY, int duration) {
+            this.snapshot = snapshot;
+            this.id = id;
+            content.setImageDrawable(snapshot);
+            container.setTranslationX(fromX);
+            container.setTranslationY(fromY);
+            if (self.isHardwareAccelerated()) {
+                container.setLayerType(LAYER_TYPE_HARDWARE, null);
             }
+            // already laid out: no layout pass
+            container.setVisibility(VISIBLE);
+            move.start(toX, toY, duration);
+        }
+
+        /**
+         * Stop the flight, the ghost disappears.
+         */
+        void land() {
+            if (isFlying()) {
+                move.animator.cancel();
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (snapshot == null) {
+                return;
+            }
+            Drawable released = snapshot;
+            snapshot = null;
+
+            container.setVisibility(INVISIBLE);
+            container.setLayerType(LAYER_TYPE_NONE, null);
+            content.setImageDrawable(null);
+            self.releaseSnapshot(released, id);
+            self.metricsRecorder.onDismissEnd();
+            StackTrace.endAsync(StackTrace.DISMISS, traceCookie);
+            traceCookie = 0;
         }
     }
 
-    private static class RemoveDirectionAnimator extends ValueAnimator {
+    /**
+     * Reversible animation of the back card reveal and elevation.
+     *
+     * Always starts from the current state, so it can be redirected at any time.
+     */
+    private static class BackRevealAnimator implements ValueAnimator.AnimatorUpdateListener {
+        private final StackView self;
         private final ValueAnimator animator;
-        Direction direction;
 
-        RemoveDirectionAnimator(int[] padding, int animDuration) {
-            animator = ValueAnimator.ofPropertyValuesHolder(
-                    PropertyValuesHolder.ofInt("left", padding[0], 0),
-                    PropertyValuesHolder.ofInt("top", padding[1], 0),
-                    PropertyValuesHolder.ofInt("right", padding[2], 0),
-                    PropertyValuesHolder.ofInt("bottom", padding[3], 0)
-            ).setDuration(animDuration);
+        private float fromReveal, toReveal;
+        private float fromElevation, toElevation;
+
+        BackRevealAnimator(StackView self, int animDuration) {
+            this.self = self;
+            this.animator = ValueAnimator.ofFloat(0.f, 1.f).setDuration(animDuration);
+            this.animator.addUpdateListener(this);
+        }
+
+        void cancel() {
+            animator.cancel();
+        }
+
+        void animateTo(float reveal, float elevation) {
+            animator.cancel();
+            fromReveal = self.backReveal;
+            toReveal = reveal;
+            fromElevation = self.backContainer.getCardElevation();
+            toElevation = elevation;
+            animator.start();
         }
 
-        public void addListener(AnimatorListener listener) {
-            animator.addListener(listener);
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            float fraction = animation.getAnimatedFraction();
+            self.setBackReveal(fromReveal + (toReveal - fromReveal) * fraction);
+            self.backContainer.setCardElevation(fromElevation + (toElevation - fromElevation) * fraction);
         }
+    }
 
-        public void addUpdateListener(AnimatorUpdateListener listener) {
-            animator.addUpdateListener(listener);
+    /**
+     * Reusable animation of a view translation.
+     */
+    private static class MoveAnimator implements ValueAnimator.AnimatorUpdateListener {
+        private final View view;
+        final ValueAnimator animator;
+
+        private float fromX, fromY;
+        private float toX, toY;
+
+        MoveAnimator(View view) {
+            this.view = view;
+            this.animator = ValueAnimator.ofFloat(0.f, 1.f);
+            this.animator.addUpdateListener(this);
         }
 
-        public void start() {
+        void start(float x, float y, long duration) {
+            animator.cancel();
+            fromX = view.getTranslationX();
+            fromY = view.getTranslationY();
+            toX = x;
+            toY = y;
+            animator.setDuration(duration);
             animator.start();
         }
+
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            float fraction = animation.getAnimatedFraction();
+            view.setTranslationX(fromX + (toX - fromX) * fraction);
+            view.setTranslationY(fromY + (toY - fromY) * fraction);
+        }
     }
 
     private static class FrontContainerOnTouchListener implements OnTouchListener {
         private final StackView self;
         private final FrameLayout front;
         private final CardView frontContainer;
-        private final FrameLayout back;
-        private final CardView backContainer;
         private final ImageView backContent;
 
-        private final int[] padding;
-        private final int[] margin;
         private final float elevation;
         private final int animDuration;
-        private final int swipe;
         private final boolean actionEnable;
-        private final int[] initPadding;
+        private final int maxFlingVelocity;
+        private final StackEngine engine;
 
+        private VelocityTracker velocityTracker;
+        // all the positions are translations of the front card from its place in the stack
         private float dX, dY;
         private float tmpX, tmpY;
         private float lastX, lastY;
-        private float initX, initY;
 
         FrontContainerOnTouchListener(StackView self) {
             this.self = self;
             this.front = self.front;
             this.frontContainer = self.frontContainer;
-            this.back = self.back;
-            this.backContainer = self.backContainer;
             this.backContent = self.backContent;
 
-            this.padding = self.padding;
             this.elevation = self.elevation;
-            this.margin = self.margin;
             this.animDuration = self.animDuration;
-            this.swipe = self.swipe;
             this.actionEnable = self.actionEnable;
-            this.initPadding = self.initPadding;
-        }
-
-        void initPosition() {
-            this.initX = self.initX;
-            this.initY = self.initY;
+            this.engine = self.engine;
+            this.maxFlingVelocity = ViewConfiguration.get(self.getContext()).getScaledMaximumFlingVelocity();
         }
 
         void init() {
-            tmpX = initX;
-            tmpY = initY;
+            tmpX = 0;
+            tmpY = 0;
 
-            lastX = initX;
-            lastY = initY;
+            lastX = 0;
+            lastY = 0;
         }
 
         @Override
         public boolean onTouch(final View view, MotionEvent event) {
-            switch (event.getAction() & MotionEvent.ACTION_MASK) {
+            int action = event.getAction() & MotionEvent.ACTION_MASK;
+            if (self.frontState == FRONT_DISMISSING) {
+                // the card is already going away
+                recycleVelocityTracker();
+                return true;
+            }
+            if (action == MotionEvent.ACTION_DOWN) {
+                if (velocityTracker == null) {
+                    velocityTracker = VelocityTracker.obtain();
+                } else {
+                    velocityTracker.clear();
+                }
+            }
+            if (velocityTracker != null) {
+                // the card moves with the finger: track the screen coordinates
+                float offsetX = event.getRawX() - event.getX();
+                float offsetY = event.getRawY() - event.getY();
+                event.offsetLocation(offsetX, offsetY);
+                velocityTracker.addMovement(event);
+                event.offsetLocation(-offsetX, -offsetY);
+            }
+
+            switch (action) {
                 case MotionEvent.ACTION_DOWN: {
-                    dX = frontContainer.getX() - event.getRawX();
-                    dY = frontContainer.getY() - event.getRawY();
-
-                    if (backContent.getDrawable() != null) {
-                        ValueAnimator animator = ValueAnimator.ofPropertyValuesHolder(
-                                PropertyValuesHolder.ofInt("left", padding[0], 0),
-                                PropertyValuesHolder.ofInt("top", padding[1], 0),
-                                PropertyValuesHolder.ofInt("right", padding[2], 0),
-                                PropertyValuesHolder.ofInt("bottom", padding[3], 0),
-                                PropertyValuesHolder.ofFloat("elevation", 0, elevation)
-                        ).setDuration(animDuration);
-                        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                            @Override
-                            public void onAnimationUpdate(ValueAnimator animation) {
-                                back.setPadding(
-                                        (int) animation.getAnimatedValue("left"),
-                                        (int) animation.getAnimatedValue("top"),
-                                        (int) animation.getAnimatedValue("right"),
-                                        (int) animation.getAnimatedValue("bottom"));
-                                backContainer.setCardElevation((float) animation.getAnimatedValue("elevation"));
-                                back.requestLayout();
-                            }
-                        });
-                        animator.start();
+                    // before the cancel: the settle end listener does nothing
+                    self.frontState = FRONT_DRAGGED;
+                    self.settleAnim.animator.cancel();
+                    self.setCardLayers(true);
+                    self.metricsRecorder.onDragStart();
+                    dX = frontContainer.getTranslationX() - event.getRawX();
+                    dY = frontContainer.getTranslationY() - event.getRawY();
+                    tmpX = lastX = frontContainer.getTranslationX();
+                    tmpY = lastY = frontContainer.getTranslationY();
+
+                    if (self.hasBackCard()) {
+                        self.backRevealAnim.animateTo(1, elevation);
                     }
                     break;
                 }
                 case MotionEvent.ACTION_UP: {
-                    float delta = frontContainer.getX() - initX;
-                    float m = (frontContainer.getY() - lastY) / (frontContainer.getX() - lastX);
-                    float p = lastY - m * lastX;
-
-                    if (delta > swipe) {
-                        float nx = initX + (frontContainer.getWidth() + 300);
-                        self.remove(nx, m * nx + p, animDuration);
-                    } else if (delta < -swipe) {
-                        float nx = initX - (frontContainer.getWidth() + 300);
-                        self.remove(nx, m * nx + p, animDuration);
+                    if (self.frontState != FRONT_DRAGGED) {
+                        recycleVelocityTracker();
+                        break;
+                    }
+                    float x = frontContainer.getTranslationX();
+                    float y = frontContainer.getTranslationY();
+
+                    float vx = 0, vy = 0;
+                    if (velocityTracker != null) {
+                        velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                        vx = velocityTracker.getXVelocity();
+                        vy = velocityTracker.getYVelocity();
+                    }
+
+                    int direction = engine.classify(x, vx, vy);
+                    if (direction != 0) {
+                        engine.project(direction, x, y, lastX, lastY, vx, vy, frontContainer.getWidth());
+                        self.dismiss(engine.targetX, engine.targetY, engine.targetDuration, 1);
                     } else {
-                        frontContainer.animate()
-                                .x(initPadding[0] + initX + margin[0])
-                                .y(initPadding[1] + initY + margin[1])
-                                .setDuration(animDuration / 2)
-                                .start();
-                        if (backContent.getDrawable() != null) {
-                            ValueAnimator animator = ValueAnimator.ofPropertyValuesHolder(
-                                    PropertyValuesHolder.ofInt("left", 0, padding[0]),
-                                    PropertyValuesHolder.ofInt("top", 0, padding[1]),
-                                    PropertyValuesHolder.ofInt("right", 0, padding[2]),
-                                    PropertyValuesHolder.ofInt("bottom", 0, padding[3]),
-                                    PropertyValuesHolder.ofFloat("elevation", elevation, 0)
-                            ).setDuration(animDuration);
-                            animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                                @Override
-                                public void onAnimationUpdate(ValueAnimator animation) {
-                                    back.setPadding(
-                                            (int) animation.getAnimatedValue("left"),
-                                            (int) animation.getAnimatedValue("top"),
-                                            (int) animation.getAnimatedValue("right"),
-                                            (int) animation.getAnimatedValue("bottom"));
-                                    backContainer.setCardElevation((float) animation.getAnimatedValue("elevation"));
-                                    back.requestLayout();
-                                }
-                            });
-                            animator.start();
-                        }
+                        settle();
                     }
+                    recycleVelocityTracker();
+                    break;
+                }
+                case MotionEvent.ACTION_CANCEL: {
+                    if (self.frontState == FRONT_DRAGGED) {
+                        settle();
+                    }
+                    recycleVelocityTracker();
                     break;
                 }
                 case MotionEvent.ACTION_MOVE: {
-                    frontContainer.animate()
-                            .x(event.getRawX() + dX)
-                            .y(event.getRawY() + dY)
-                            .setDuration(0)
-                            .start();
-
-                    lastX = tmpX;
-                    lastY = tmpY;
+                    if (self.frontState != FRONT_DRAGGED) {
+                        break;
+                    }
+                    // batched samples: only the latest one is drawn, the previous one gives the direction
+                    int history = event.getHistorySize();
+                    if (history > 0) {
+                        float offsetX = event.getRawX() - event.getX();
+                        float offsetY = event.getRawY() - event.getY();
+                        lastX = event.getHistoricalX(history - 1) + offsetX + dX;
+                        lastY = event.getHistoricalY(history - 1) + offsetY + dY;
+                    } else {
+                        lastX = tmpX;
+                        lastY = tmpY;
+                    }
                     tmpX = event.getRawX() + dX;
                     tmpY = event.getRawY() + dY;
 
+                    frontContainer.setTranslationX(tmpX);
+                    frontContainer.setTranslationY(tmpY);
+
                     if (actionEnable) {
-                        float delta = frontContainer.getX() - initX;
-                        if (delta > swipe || delta < -swipe) {
+                        if (engine.isPastSwipe(tmpX)) {
                             self.addActionView();
                         } else {
                             self.removeActionView();
@@ -865,90 +3122,53 @@ public class StackView extends FrameLayout {
             front.invalidate();
             return true;
         }
-    }
-
-    private static class AnimatorListenerHelper implements Animator.AnimatorListener {
-        private final StackView self;
 
-        private final int[] padding;
-        private final int[] margin;
-        private final int[] initPadding;
+        private void settle() {
+            self.frontState = FRONT_SETTLING;
+            self.metricsRecorder.onSettle();
+            self.settleAnim.start(0, 0, animDuration / 2);
+            if (self.hasBackCard()) {
+                self.backRevealAnim.animateTo(0, 0);
+            }
+        }
 
-        private final CardView frontContainer;
-        private final FrameLayout back;
-        private final FrameLayout empty;
+        private void recycleVelocityTracker() {
+            if (velocityTracker != null) {
+                velocityTracker.recycle();
+                velocityTracker = null;
+            }
+        }
+    }
 
-        private float initX;
-        private float initY;
-        private Adapter adapter;
+    /**
+     * End of the dismiss animation of the front card itself (no snapshot available).
+     */
+    private static class AnimatorListenerHelper extends AnimatorListenerAdapter {
+        private final StackView self;
 
-        private boolean done = false;
+        private int count;
+        private float x, y;
+        private int traceCookie;
 
-        private AnimatorListenerHelper(
-                StackView stackView, CardView frontContainer,
-                FrameLayout back, FrameLayout empty,
-                int[] padding, int[] margin, int[] initPadding) {
+        private AnimatorListenerHelper(StackView stackView) {
             this.self = stackView;
-            this.frontContainer = frontContainer;
-            this.back = back;
-            this.empty = empty;
-            this.padding = padding;
-            this.margin = margin;
-            this.initPadding = initPadding;
         }
 
-        void initPosition() {
-            this.initX = self.initX;
-            this.initY = self.initY;
-        }
-
-        void init(Adapter adapter) {
-            this.adapter = adapter;
-            this.done = false;
+        void init(int count, float x, float y) {
+            this.count = count;
+            this.x = x;
+            this.y = y;
         }
 
         @Override
         public void onAnimationEnd(Animator animation) {
-            if (!done) {
-                done = true;
-
-                adapter.remove();
-                back.setVisibility(GONE);
-                switch (adapter.getItemCount()) {
-                    case 0: {
-                        frontContainer.setVisibility(GONE);
-                        frontContainer.setX(initPadding[0] + initX + margin[0]);
-                        frontContainer.setY(initPadding[1] + initY + margin[1]);
-
-                        View view = adapter.createAndBindEmptyView(empty);
-                        if (view != null) {
-                            empty.addView(view, -1);
-                            empty.setVisibility(VISIBLE);
-                        }
-                        break;
-                    }
-                    default: {
-                        back.setVisibility(VISIBLE);
-                        self.fillBack();
-                        back.setPadding(padding[0], padding[1], padding[2], padding[3]);
-                    }
-                    case 1: {
-                        self.fillFront();
-                        frontContainer.setX(initPadding[0] + initX + margin[0]);
-                        frontContainer.setY(initPadding[1] + initY + margin[1]);
-                        break;
-                    }
-                }
+            StackTrace.endAsync(StackTrace.DISMISS, traceCookie);
+            traceCookie = 0;
+            if (self.frontState == FRONT_DISMISSING) {
+                self.frontState = FRONT_IDLE;
+                self.advance(count, x, y);
+                self.metricsRecorder.onDismissEnd();
             }
         }
-
-        @Override
-        public void onAnimationStart(Animator animation) {}
-
-        @Override
-        public void onAnimationCancel(Animator animation) {}
-
-        @Override
-        public void onAnimationRepeat(Animator animation) {}
     }
 }
@@ -0,0 +1,204 @@
+package net.brach.android.stackview;
+
+import java.util.Arrays;
+
+/**
+ * Performance of one swipe, from the touch down (or the programmatic removal)
+ * to the next cards bound and snapshot.
+ *
+ * The same instance is reused for every swipe: copy the values to keep them.
+ */
+public final class SwipeMetrics {
+    private long[] dragFrames;
+    private int dragFrameCount;
+    private long[] dismissFrames;
+    private int dismissFrameCount;
+
+    private long frameIntervalNanos;
+    private int droppedFrameCount;
+    private long bindTimeNanos;
+    private long snapshotTimeNanos;
+    private int layoutPassCount;
+    private int requestLayoutCount;
+    private int createViewCount;
+    private int bindViewCount;
+    private int bitmapAllocationCount;
+    private boolean frameMetrics;
+
+    SwipeMetrics() {
+        this.dragFrames = new long[64];
+        this.dismissFrames = new long[32];
+    }
+
+    /**
+     * @return number of frames rendered while the card was dragged.
+     */
+    public int getDragFrameCount() {
+        return dragFrameCount;
+    }
+
+    /**
+     * @param index frame index
+     *
+     * @return duration of a frame rendered while the card was dragged, in nanoseconds.
+     */
+    public long getDragFrameDuration(int index) {
+        return dragFrames[index];
+    }
+
+    /**
+     * @return number of frames rendered while the card was animated out.
+     */
+    public int getDismissFrameCount() {
+        return dismissFrameCount;
+    }
+
+    /**
+     * @param index frame index
+     *
+     * @return duration of a frame rendered while the card was animated out, in nanoseconds.
+     */
+    public long getDismissFrameDuration(int index) {
+        return dismissFrames[index];
+    }
+
+    /**
+     * @return expected duration of a frame for the display, in nanoseconds.
+     */
+    public long getFrameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    /**
+     * @return number of frames missed during the drag and the dismiss animation
+     * (with FrameMetrics, also the frames whose metrics were dropped).
+     */
+    public int getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @return time spent binding the cards (front card and snapshot binds), in nanoseconds.
+     */
+    public long getBindTimeNanos() {
+        return bindTimeNanos;
+    }
+
+    /**
+     * @return time spent drawing or recording the snapshots, in nanoseconds.
+     */
+    public long getSnapshotTimeNanos() {
+        return snapshotTimeNanos;
+    }
+
+    /**
+     * @return number of layout passes of the StackView.
+     */
+    public int getLayoutPassCount() {
+        return layoutPassCount;
+    }
+
+    /**
+     * @return number of layout requests reaching the StackView.
+     */
+    public int getRequestLayoutCount() {
+        return requestLayoutCount;
+    }
+
+    /**
+     * @return number of card views created by 'Adapter.onCreateView'.
+     */
+    public int getCreateViewCount() {
+        return createViewCount;
+    }
+
+    /**
+     * @return number of cards bound by 'Adapter.onBindView' (live cards and snapshots).
+     */
+    public int getBindViewCount() {
+        return bindViewCount;
+    }
+
+    /**
+     * @return number of snapshot bitmaps allocated (not taken from the BitmapPool).
+     */
+    public int getBitmapAllocationCount() {
+        return bitmapAllocationCount;
+    }
+
+    /**
+     * @return true if the frame durations come from FrameMetrics (render time),
+     * false if they are the intervals between Choreographer frames.
+     */
+    public boolean isFromFrameMetrics() {
+        return frameMetrics;
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    void reset(long frameIntervalNanos, boolean frameMetrics) {
+        this.dragFrameCount = 0;
+        this.dismissFrameCount = 0;
+        this.frameIntervalNanos = frameIntervalNanos;
+        this.droppedFrameCount = 0;
+        this.bindTimeNanos = 0;
+        this.snapshotTimeNanos = 0;
+        this.layoutPassCount = 0;
+        this.requestLayoutCount = 0;
+        this.createViewCount = 0;
+        this.bindViewCount = 0;
+        this.bitmapAllocationCount = 0;
+        this.frameMetrics = frameMetrics;
+    }
+
+    void addFrame(long duration, boolean dismiss) {
+        if (dismiss) {
+            if (dismissFrameCount == dismissFrames.length) {
+                dismissFrames = Arrays.copyOf(dismissFrames, dismissFrameCount * 2);
+            }
+            dismissFrames[dismissFrameCount++] = duration;
+        } else {
+            if (dragFrameCount == dragFrames.length) {
+                dragFrames = Arrays.copyOf(dragFrames, dragFrameCount * 2);
+            }
+            dragFrames[dragFrameCount++] = duration;
+        }
+        if (frameIntervalNanos > 0 && duration > frameIntervalNanos) {
+            droppedFrameCount += (int) ((duration - 1) / frameIntervalNanos);
+        }
+    }
+
+    void addDroppedFrames(int count) {
+        droppedFrameCount += count;
+    }
+
+    void addBindTime(long nanos) {
+        bindTimeNanos += nanos;
+    }
+
+    void addSnapshotTime(long nanos) {
+        snapshotTimeNanos += nanos;
+    }
+
+    void addLayoutPass() {
+        layoutPassCount++;
+    }
+
+    void addRequestLayout() {
+        requestLayoutCount++;
+    }
+
+    void addCreateView() {
+        createViewCount++;
+    }
+
+    void addBindView() {
+        bindViewCount++;
+    }
+
+    void addBitmapAllocation() {
+        bitmapAllocationCount++;
+    }
+}
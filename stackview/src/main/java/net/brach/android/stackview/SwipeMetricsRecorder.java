@@ -0,0 +1,315 @@
+package net.brach.android.stackview;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+import android.view.WindowManager;
+
+import java.util.Random;
+
+/**
+ * Collect the SwipeMetrics of the sampled swipes.
+ *
+ * Frame durations come from FrameMetrics (Android N and above, in a hardware accelerated Activity),
+ * or from the intervals between Choreographer frames (Android Jelly Bean and above).
+ * The FrameMetrics listener is only registered while a sampled swipe moves the card.
+ */
+class SwipeMetricsRecorder {
+    private static final int IDLE = 0;
+    private static final int DRAG = 1;
+    private static final int DISMISS = 2;
+    private static final int BIND = 3;
+
+    private static final int MAX_BIND_FRAMES = 30;
+
+    private final StackView stackView;
+    private final SwipeMetrics metrics;
+    private final Random random;
+
+    private StackView.OnSwipeMetricsListener listener;
+    private float sampleRate;
+
+    private int phase;
+    private long lastFrameTime;
+    private int bindFrames;
+
+    private FrameCallback frameCallback;
+    private FrameMetricsListener frameMetricsListener;
+
+    SwipeMetricsRecorder(StackView stackView) {
+        this.stackView = stackView;
+        this.metrics = new SwipeMetrics();
+        this.random = new Random();
+        this.phase = IDLE;
+    }
+
+    void setListener(StackView.OnSwipeMetricsListener listener, float sampleRate) {
+        this.listener = listener;
+        this.sampleRate = sampleRate;
+        this.phase = IDLE;
+
+        if (listener != null) {
+            attach();
+        } else {
+            detach();
+        }
+    }
+
+    boolean isRecording() {
+        return phase != IDLE;
+    }
+
+    void attach() {
+        if (listener == null || stackView.getWindowToken() == null) {
+            return;
+        }
+        if (frameCallback == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            frameCallback = new FrameCallback(this);
+        }
+        if (frameMetricsListener == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && stackView.isHardwareAccelerated()) {
+            Activity activity = getActivity(stackView.getContext());
+            if (activity != null) {
+                frameMetricsListener = new FrameMetricsListener(this, activity.getWindow());
+            }
+        }
+    }
+
+    void detach() {
+        phase = IDLE;
+        if (frameCallback != null) {
+            frameCallback.stop();
+        }
+        if (frameMetricsListener != null) {
+            frameMetricsListener.remove();
+            frameMetricsListener = null;
+        }
+    }
+
+    void onDragStart() {
+        if (phase == BIND) {
+            report();
+        }
+        if (phase == IDLE && sample()) {
+            start(DRAG);
+        }
+    }
+
+    void onSettle() {
+        if (phase == DRAG) {
+            phase = IDLE;
+            stopFrameMetrics();
+        }
+    }
+
+    void onDismissStart() {
+        if (phase == DRAG) {
+            phase = DISMISS;
+        } else if (phase == IDLE && sample()) {
+            start(DISMISS);
+        }
+    }
+
+    void onDismissEnd() {
+        if (phase == DISMISS) {
+            phase = BIND;
+            bindFrames = 0;
+            stopFrameMetrics();
+            if (frameCallback == null) {
+                report();
+            }
+        }
+    }
+
+    void addBindTime(long nanos) {
+        if (phase != IDLE) {
+            metrics.addBindTime(nanos);
+        }
+    }
+
+    void addSnapshotTime(long nanos) {
+        if (phase != IDLE) {
+            metrics.addSnapshotTime(nanos);
+        }
+    }
+
+    void onLayoutPass() {
+        if (phase != IDLE) {
+            metrics.addLayoutPass();
+        }
+    }
+
+    void onRequestLayout() {
+        if (phase != IDLE) {
+            metrics.addRequestLayout();
+        }
+    }
+
+    void onCreateView() {
+        if (phase != IDLE) {
+            metrics.addCreateView();
+        }
+    }
+
+    void onBindView() {
+        if (phase != IDLE) {
+            metrics.addBindView();
+        }
+    }
+
+    void onBitmapAllocation() {
+        if (phase != IDLE) {
+            metrics.addBitmapAllocation();
+        }
+    }
+
+    /*************/
+    /** private **/
+    /*************/
+
+    private boolean sample() {
+        return listener != null && sampleRate > 0 && (sampleRate >= 1 || random.nextFloat() < sampleRate);
+    }
+
+    private void start(int phase) {
+        metrics.reset(getFrameIntervalNanos(), frameMetricsListener != null);
+        this.phase = phase;
+        this.lastFrameTime = 0;
+        if (frameCallback != null) {
+            frameCallback.start();
+        }
+        if (frameMetricsListener != null) {
+            frameMetricsListener.add();
+        }
+    }
+
+    private void report() {
+        phase = IDLE;
+        if (frameCallback != null) {
+            frameCallback.stop();
+        }
+        stopFrameMetrics();
+        if (listener != null) {
+            listener.onSwipeMetrics(metrics);
+        }
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        switch (phase) {
+            case DRAG:
+            case DISMISS:
+                if (lastFrameTime != 0 && frameMetricsListener == null) {
+                    metrics.addFrame(frameTimeNanos - lastFrameTime, phase == DISMISS);
+                }
+                lastFrameTime = frameTimeNanos;
+                frameCallback.start();
+                break;
+            case BIND:
+                if (++bindFrames > MAX_BIND_FRAMES || !stackView.isBackSnapshotPending()) {
+                    report();
+                } else {
+                    frameCallback.start();
+                }
+                break;
+        }
+    }
+
+    /**
+     * @param duration total duration of the frame
+     * @param dropCount frames whose metrics were dropped before this one (the listener was late)
+     */
+    private void onFrameMetrics(long duration, int dropCount) {
+        if (phase == DRAG || phase == DISMISS) {
+            metrics.addFrame(duration, phase == DISMISS);
+            metrics.addDroppedFrames(dropCount);
+        }
+    }
+
+    private void stopFrameMetrics() {
+        if (frameMetricsListener != null) {
+            frameMetricsListener.remove();
+        }
+    }
+
+    private long getFrameIntervalNanos() {
+        WindowManager windowManager = (WindowManager) stackView.getContext().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager != null ? windowManager.getDefaultDisplay().getRefreshRate() : 60.f;
+        return (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60.f));
+    }
+
+    private static Activity getActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameCallback implements Choreographer.FrameCallback {
+        private final SwipeMetricsRecorder recorder;
+        private final Choreographer choreographer;
+
+        FrameCallback(SwipeMetricsRecorder recorder) {
+            this.recorder = recorder;
+            this.choreographer = Choreographer.getInstance();
+        }
+
+        void start() {
+            choreographer.removeFrameCallback(this);
+            choreographer.postFrameCallback(this);
+        }
+
+        void stop() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            recorder.onFrame(frameTimeNanos);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private static class FrameMetricsListener implements Window.OnFrameMetricsAvailableListener {
+        private final SwipeMetricsRecorder recorder;
+        private final Window window;
+        private final Handler handler;
+        private boolean added;
+
+        FrameMetricsListener(SwipeMetricsRecorder recorder, Window window) {
+            this.recorder = recorder;
+            this.window = window;
+            this.handler = new Handler(Looper.getMainLooper());
+        }
+
+        void add() {
+            if (!added) {
+                window.addOnFrameMetricsAvailableListener(this, handler);
+                added = true;
+            }
+        }
+
+        // removing a listener never added throws
+        void remove() {
+            if (added) {
+                window.removeOnFrameMetricsAvailableListener(this);
+                added = false;
+            }
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+            recorder.onFrameMetrics(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION), dropCountSinceLastInvocation);
+        }
+    }
+}
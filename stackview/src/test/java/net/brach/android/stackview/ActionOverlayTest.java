@@ -0,0 +1,62 @@
+package net.brach.android.stackview;
+
+import android.graphics.drawable.Drawable;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The action overlay is a foreground drawable of the front card: crossing the swipe distance
+ * back and forth changes no hierarchy and requests no layout.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ActionOverlayTest {
+    // default swipe distance (67dp) at the density of the tests
+    private static final float PAST_SWIPE = 150;
+    private static final float BEFORE_SWIPE = 20;
+
+    @Test
+    public void crossingTheSwipeDistanceRequestsNoLayout() {
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(10, false), StackView.SnapshotMode.BITMAP);
+        ViewGroup front = driver.getFrontContainer();
+        Drawable overlay = ((FrameLayout) front).getForeground();
+        int childCount = front.getChildCount();
+        assertNotNull(overlay);
+
+        long downTime = driver.down();
+        for (int i = 0; i < 6; i++) {
+            // fade in then out, partly
+            driver.move(downTime, i % 2 == 0 ? PAST_SWIPE : BEFORE_SWIPE);
+            for (int frame = 0; frame < 4; frame++) {
+                driver.idle(StackViewDriver.FRAME);
+                assertFalse("layout requested by move " + i, driver.stackView.isLayoutRequested());
+                assertEquals(childCount, front.getChildCount());
+            }
+        }
+        driver.up(downTime, BEFORE_SWIPE);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertSame(overlay, ((FrameLayout) front).getForeground());
+        assertEquals(childCount, front.getChildCount());
+    }
+
+    @Test
+    public void disabledActionHasNoOverlay() {
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(10, false), StackView.SnapshotMode.BITMAP,
+                Robolectric.buildAttributeSet().addAttribute(R.attr.action_enable, "false").build());
+
+        assertNull(((FrameLayout) driver.getFrontContainer()).getForeground());
+    }
+}
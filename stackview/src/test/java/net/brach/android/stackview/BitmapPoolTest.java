@@ -0,0 +1,50 @@
+package net.brach.android.stackview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A replaced pool is cleared only if the StackView created it: a pool given to 'setBitmapPool' may be shared.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class BitmapPoolTest {
+    private static final int POOL_SIZE = 4 * TestAdapter.CARD_WIDTH * TestAdapter.CARD_HEIGHT * 4;
+
+    private StackViewDriver driver;
+
+    @Before
+    public void setUp() {
+        driver = new StackViewDriver(new TestAdapter(20, false), StackView.SnapshotMode.BITMAP);
+    }
+
+    @Test
+    public void replacedOwnPoolIsCleared() {
+        driver.swipe(200);
+        LruBitmapPool own = (LruBitmapPool) driver.stackView.getBitmapPool();
+        assertTrue("pooled snapshot", own.size() > 0);
+
+        driver.stackView.setBitmapPool(new LruBitmapPool(POOL_SIZE));
+
+        assertEquals(0, own.size());
+    }
+
+    @Test
+    public void replacedSharedPoolIsKept() {
+        LruBitmapPool shared = new LruBitmapPool(POOL_SIZE);
+        driver.stackView.setBitmapPool(shared);
+        driver.swipe(200);
+        int size = shared.size();
+        assertTrue("pooled snapshot", size > 0);
+
+        driver.stackView.setBitmapPool(new LruBitmapPool(POOL_SIZE));
+
+        assertEquals(size, shared.size());
+    }
+}
@@ -0,0 +1,136 @@
+package net.brach.android.stackview;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowBitmapFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An image decoded after a swipe updates the card of its item, at the position of the item once decoded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CardImageLoaderTest {
+    private static final int ITEMS = 20;
+
+    @Test
+    public void decodedImageFollowsItsItem() {
+        assertDecodedAfterSwipe(false);
+    }
+
+    @Test
+    public void decodedImageFollowsItsStableItem() {
+        assertDecodedAfterSwipe(true);
+    }
+
+    @Test
+    public void decodedImageUpdatesTheCachedFrontSnapshot() {
+        StackViewDriver driver = newDriver(true);
+        ImageAdapter adapter = (ImageAdapter) driver.adapter;
+        driver.swipe(200);
+
+        // item 1 was loaded as the back card, its snapshot is cached with the placeholder
+        adapter.binds.clear();
+        adapter.decode(1);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertTrue("front card bound again: " + adapter.binds, adapter.binds.contains("0:1"));
+    }
+
+    /**
+     * Load the images of the first 4 items, swipe the first one, then decode the image of item 3:
+     * its card moved from 'FOURTH' to 'THIRD' meanwhile.
+     */
+    private static void assertDecodedAfterSwipe(boolean stableIds) {
+        StackViewDriver driver = newDriver(stableIds);
+        ImageAdapter adapter = (ImageAdapter) driver.adapter;
+        driver.swipe(200);
+
+        adapter.binds.clear();
+        adapter.decode(3);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertTrue("item 3 bound again: " + adapter.binds, adapter.binds.contains("2:3"));
+        assertFalse("item 4 bound again: " + adapter.binds, adapter.binds.contains("3:4"));
+    }
+
+    private static StackViewDriver newDriver(boolean stableIds) {
+        ImageAdapter adapter = new ImageAdapter(stableIds);
+        StackViewDriver driver = new StackViewDriver(adapter, StackView.SnapshotMode.BITMAP,
+                Robolectric.buildAttributeSet().addAttribute(R.attr.stack_depth, "4").build());
+        // the loader needs the StackView: the items are added once it is created
+        adapter.loader = new CardImageLoader(driver.stackView, adapter.executor, 16 * 1024 * 1024);
+        adapter.add(ITEMS);
+        adapter.notifyDataSetChangedOnMainThread();
+        driver.idle(StackViewDriver.SETTLE);
+        return driver;
+    }
+
+    /**
+     * Cards of image items ("/image/<item>"), decoded on demand.
+     */
+    private static class ImageAdapter extends TestAdapter {
+        private final List<Runnable> queue = new ArrayList<>();
+        private final HashMap<Integer, Runnable> tasks = new HashMap<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+        CardImageLoader loader;
+        // binds recorded as "<position>:<item>"
+        final List<String> binds = new ArrayList<>();
+
+        ImageAdapter(boolean stableIds) {
+            super(0, stableIds);
+        }
+
+        /**
+         * Decode the image of an item (posted to the main looper).
+         *
+         * @param item item number
+         */
+        void decode(int item) {
+            tasks.remove(item).run();
+        }
+
+        @Override
+        public View onCreateView(ViewGroup parent, Position position) {
+            createCount++;
+            View view = new ImageView(parent.getContext());
+            view.setLayoutParams(new FrameLayout.LayoutParams(CARD_WIDTH, CARD_HEIGHT));
+            return view;
+        }
+
+        @Override
+        public void onBindView(View view, Position position) {
+            super.onBindView(view, position);
+            int item = getItem(position.value);
+            binds.add(position.value + ":" + item);
+
+            String path = "/image/" + item;
+            ShadowBitmapFactory.provideWidthAndHeightHints(path, 2 * CARD_WIDTH, 2 * CARD_HEIGHT);
+            int queued = queue.size();
+            loader.load((ImageView) view, position, path);
+            if (queue.size() > queued) {
+                tasks.put(item, queue.get(queued));
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.brach.android.stackview;
+
+import android.view.Choreographer;
+
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowChoreographer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Choreographer running the frame callbacks at the next frame, as on a device.
+ *
+ * The default shadow runs them at once: a frame callback posted again by every frame
+ * (as the jank sampling of the swipe metrics) would never let the clock advance.
+ * The frames go straight to the scheduler: the removed messages of the default shadow stay in the queue.
+ */
+@Implements(Choreographer.class)
+public class FrameChoreographer extends ShadowChoreographer {
+    private final Map<Choreographer.FrameCallback, Runnable> frames = new HashMap<>();
+
+    @Implementation
+    @Override
+    public void postFrameCallbackDelayed(final Choreographer.FrameCallback callback, long delayMillis) {
+        Runnable frame = new Runnable() {
+            @Override
+            public void run() {
+                frames.remove(callback);
+                callback.doFrame(getFrameTimeNanos());
+            }
+        };
+        frames.put(callback, frame);
+        Robolectric.getForegroundThreadScheduler().postDelayed(frame, delayMillis + StackViewDriver.FRAME);
+    }
+
+    @Implementation
+    @Override
+    public void removeFrameCallback(Choreographer.FrameCallback callback) {
+        Runnable frame = frames.remove(callback);
+        if (frame != null) {
+            Robolectric.getForegroundThreadScheduler().remove(frame);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.brach.android.stackview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The dismissed and the rewound front cards are drawn live, not taken from the snapshot cache:
+ * the front card may have changed since its item was snapshot behind it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FrontCaptureTest {
+    private StackViewDriver driver;
+
+    @Before
+    public void setUp() {
+        // stable ids: the snapshot of the back card is cached when it becomes the front card
+        driver = new StackViewDriver(new TestAdapter(20, true), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+    }
+
+    @Test
+    public void dismissDrawsTheLiveFrontCard() {
+        TestAdapter.CardContent front = (TestAdapter.CardContent) driver.getFrontView();
+        int drawCount = front.drawCount;
+
+        long downTime = driver.down();
+        driver.move(downTime, 200);
+        driver.up(downTime, 200);
+
+        assertEquals("front card drawn once", drawCount + 1, front.drawCount);
+    }
+
+    @Test
+    public void rewindDrawsTheLiveFrontCard() {
+        driver.stackView.setRewindCount(1);
+        driver.swipe(200);
+        TestAdapter.CardContent front = (TestAdapter.CardContent) driver.getFrontView();
+        int drawCount = front.drawCount;
+
+        // the front card becomes the back card
+        assertTrue(driver.stackView.rewind());
+
+        assertEquals("front card drawn once", drawCount + 1, front.drawCount);
+    }
+}
@@ -0,0 +1,62 @@
+package net.brach.android.stackview;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Work of the back card for a swipe: the snapshot back card is bound in the tmp card and drawn into
+ * a pooled bitmap, the live back card is bound in place and never drawn in software.
+ * Both modes also draw the capture of the card flying out.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class LiveBackCardTest {
+    private static final int WARM_UP_SWIPES = 4;
+    private static final int SWIPES = 8;
+
+    @Test
+    public void snapshotBackCardIsDrawnOncePerSwipe() {
+        StackViewDriver driver = newDriver(false);
+        for (int i = 0; i < SWIPES; i++) {
+            int bindCount = driver.adapter.bindCount;
+            int drawCount = driver.adapter.getDrawCount();
+            driver.swipe(i % 2 == 0 ? 200 : -200);
+
+            assertEquals("front card and back card bound", 2, driver.adapter.bindCount - bindCount);
+            assertEquals("front card captured, back card snapshot", 2, driver.adapter.getDrawCount() - drawCount);
+            assertEquals("bitmaps allocated", 0, driver.bitmapAllocationCount);
+            assertEquals("layout passes", 3, driver.layoutPassCount);
+        }
+    }
+
+    @Test
+    public void liveBackCardIsNeverSnapshot() {
+        StackViewDriver driver = newDriver(true);
+        for (int i = 0; i < SWIPES; i++) {
+            int bindCount = driver.adapter.bindCount;
+            int drawCount = driver.adapter.getDrawCount();
+            driver.swipe(i % 2 == 0 ? 200 : -200);
+
+            assertEquals("front card and back card bound", 2, driver.adapter.bindCount - bindCount);
+            assertEquals("front card captured", 1, driver.adapter.getDrawCount() - drawCount);
+            assertEquals("bitmaps allocated", 0, driver.bitmapAllocationCount);
+            // no snapshot of the back card
+            assertEquals("layout passes", 2, driver.layoutPassCount);
+        }
+    }
+
+    private static StackViewDriver newDriver(boolean liveBackCard) {
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(WARM_UP_SWIPES + SWIPES + 10, false),
+                StackView.SnapshotMode.BITMAP);
+        driver.stackView.setLiveBackCard(liveBackCard);
+        driver.idle(StackViewDriver.SETTLE);
+        for (int i = 0; i < WARM_UP_SWIPES; i++) {
+            driver.swipe(i % 2 == 0 ? 200 : -200);
+        }
+        return driver;
+    }
+}
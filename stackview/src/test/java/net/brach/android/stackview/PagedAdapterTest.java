@@ -0,0 +1,182 @@
+package net.brach.android.stackview;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ring buffer of the PagedAdapter: pages asked at the prefetch distance, bounded window and restore.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PagedAdapterTest {
+    private static final int CAPACITY = 4;
+    private static final int PREFETCH = 1;
+
+    private StackView stackView;
+    private Pages adapter;
+
+    @Before
+    public void setUp() {
+        stackView = new StackView(Robolectric.setupActivity(Activity.class));
+        adapter = new Pages();
+    }
+
+    @Test
+    public void firstPageIsAskedWhenSet() {
+        assertTrue(adapter.requests.isEmpty());
+        stackView.setAdapter(adapter);
+
+        assertEquals(Collections.singletonList(CAPACITY), adapter.requests);
+    }
+
+    @Test
+    public void firstPageLoadedWhenSetIsBoundOnce() {
+        Pages adapter = new Pages() {
+            @Override
+            public void onLoadMore(int count) {
+                super.onLoadMore(count);
+                // loaded synchronously, while the StackView sets the adapter
+                append(Arrays.asList(0, 1, 2, 3));
+            }
+        };
+        stackView.setAdapter(adapter);
+        int bindCount = adapter.bindCount;
+        Robolectric.getForegroundThreadScheduler().advanceBy(1, TimeUnit.SECONDS);
+
+        assertEquals(CAPACITY, adapter.getItemCount());
+        assertTrue(bindCount > 0);
+        assertEquals(bindCount, adapter.bindCount);
+    }
+
+    @Test
+    public void appendIsBoundedByTheWindow() {
+        stackView.setAdapter(adapter);
+
+        assertEquals(CAPACITY, adapter.append(Arrays.asList(0, 1, 2, 3, 4, 5)));
+        assertEquals(CAPACITY, adapter.getItemCount());
+        assertEquals(3, (int) adapter.getItem(3));
+    }
+
+    @Test
+    public void nextPageIsAskedAtThePrefetchDistance() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1, 2, 3));
+        adapter.remove();
+        adapter.remove();
+        assertEquals(1, adapter.requests.size());
+
+        adapter.remove();
+        assertEquals(Arrays.asList(CAPACITY, 3), adapter.requests);
+    }
+
+    @Test
+    public void pagesWrapAroundTheBuffer() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1, 2, 3));
+        adapter.remove(3);
+        adapter.append(Arrays.asList(4, 5, 6));
+
+        assertEquals(CAPACITY, adapter.getItemCount());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(3 + i, (int) adapter.getItem(i));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void itemOutOfTheWindow() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1));
+        adapter.getItem(2);
+    }
+
+    @Test
+    public void restoreBringsBackTheRemovedItems() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1, 2, 3));
+        adapter.remove(2);
+
+        assertTrue(adapter.restore());
+        assertEquals(1, (int) adapter.getItem(0));
+        assertTrue(adapter.restore());
+        assertEquals(0, (int) adapter.getItem(0));
+        assertFalse(adapter.restore());
+    }
+
+    @Test
+    public void restoreStopsAtTheReusedSlots() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1, 2, 3));
+        adapter.remove(3);
+        // the new page takes the slots of items 0 to 2
+        adapter.append(Arrays.asList(4, 5, 6));
+
+        assertFalse(adapter.restore());
+        assertEquals(3, (int) adapter.getItem(0));
+    }
+
+    @Test
+    public void emptyPageEndsTheDeck() {
+        stackView.setAdapter(adapter);
+        adapter.append(Collections.<Integer>emptyList());
+        adapter.remove();
+
+        assertTrue(adapter.isEnded());
+        assertEquals(1, adapter.requests.size());
+    }
+
+    @Test
+    public void clearAsksTheFirstPageAgain() {
+        stackView.setAdapter(adapter);
+        adapter.append(Arrays.asList(0, 1, 2, 3));
+        adapter.append(Collections.<Integer>emptyList());
+        adapter.clear();
+
+        assertFalse(adapter.isEnded());
+        assertEquals(0, adapter.getItemCount());
+        assertEquals(Arrays.asList(CAPACITY, CAPACITY), adapter.requests);
+    }
+
+    private static class Pages extends PagedAdapter<Integer> {
+        // counts given to 'onLoadMore'
+        final List<Integer> requests = new ArrayList<>();
+        int bindCount;
+
+        Pages() {
+            super(CAPACITY, PREFETCH);
+        }
+
+        @Override
+        public void onLoadMore(int count) {
+            requests.add(count);
+        }
+
+        @Override
+        public View onCreateView(ViewGroup parent, Position position) {
+            return new View(parent.getContext());
+        }
+
+        @Override
+        public void onBindItem(View view, Position position, Integer item) {
+            bindCount++;
+            view.setTag(item);
+        }
+    }
+}
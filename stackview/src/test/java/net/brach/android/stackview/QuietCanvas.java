@@ -0,0 +1,22 @@
+package net.brach.android.stackview;
+
+import android.graphics.Canvas;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowCanvas;
+
+/**
+ * Canvas keeping no description of the drawing.
+ *
+ * The default shadow appends every draw to a description of the bitmap: the reused snapshot bitmaps
+ * would grow with every swipe.
+ */
+@Implements(Canvas.class)
+public class QuietCanvas extends ShadowCanvas {
+
+    @Implementation
+    @Override
+    public void appendDescription(String description) {
+    }
+}
@@ -0,0 +1,84 @@
+package net.brach.android.stackview;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cards are sized in 'onMeasure': a resize changing the card size snapshots the cards again,
+ * a resize keeping it snapshots nothing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ResizeTest {
+    // small enough to fit any screen of the tests
+    private static final int CARD_SIZE = 100;
+
+    @Test
+    public void cardsAreSizedByTheirContent() {
+        StackViewDriver driver = newDriver();
+
+        assertTrue(driver.stackView.getCardWidth() >= CARD_SIZE);
+        assertEquals(driver.stackView.getCardWidth(), driver.getFrontContainer().getWidth());
+        assertEquals(driver.stackView.getCardHeight(), driver.getFrontContainer().getHeight());
+    }
+
+    @Test
+    public void sameCardSizeSnapshotsNothing() {
+        StackViewDriver driver = newDriver();
+        int cardWidth = driver.stackView.getCardWidth();
+        int cardHeight = driver.stackView.getCardHeight();
+        int bindCount = driver.adapter.bindCount;
+        int drawCount = driver.adapter.getDrawCount();
+
+        // room left for the padding of the StackView and the margins of the cards
+        resize(driver, cardWidth + 200, cardHeight + 200);
+
+        assertEquals(cardWidth, driver.stackView.getCardWidth());
+        assertEquals(cardHeight, driver.stackView.getCardHeight());
+        assertEquals(bindCount, driver.adapter.bindCount);
+        assertEquals(drawCount, driver.adapter.getDrawCount());
+    }
+
+    @Test
+    public void smallerCardsAreSnapshotAgain() {
+        StackViewDriver driver = newDriver();
+        int cardWidth = driver.stackView.getCardWidth();
+        int cardHeight = driver.stackView.getCardHeight();
+        int drawCount = driver.adapter.getDrawCount();
+
+        resize(driver, cardWidth - 20, cardHeight - 20);
+
+        assertTrue(driver.stackView.getCardWidth() < cardWidth);
+        assertTrue(driver.stackView.getCardHeight() < cardHeight);
+        assertEquals(driver.stackView.getCardWidth(), driver.getFrontContainer().getWidth());
+        // back card and third card
+        assertTrue("cards drawn: " + (driver.adapter.getDrawCount() - drawCount),
+                driver.adapter.getDrawCount() - drawCount >= 2);
+    }
+
+    private static void resize(StackViewDriver driver, int width, int height) {
+        driver.stackView.setLayoutParams(new FrameLayout.LayoutParams(width, height));
+        driver.idle(StackViewDriver.SETTLE);
+    }
+
+    private static StackViewDriver newDriver() {
+        return new StackViewDriver(new TestAdapter(10, true) {
+            @Override
+            public View onCreateView(ViewGroup parent, Position position) {
+                View view = super.onCreateView(parent, position);
+                view.setLayoutParams(new FrameLayout.LayoutParams(CARD_SIZE, CARD_SIZE));
+                return view;
+            }
+        }, StackView.SnapshotMode.BITMAP, Robolectric.buildAttributeSet().addAttribute(R.attr.stack_depth, "3").build());
+    }
+}
@@ -0,0 +1,84 @@
+package net.brach.android.stackview;
+
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The dismissed cards are kept bound to their item and rewound without any inflate nor bind.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class RewindTest {
+
+    @Test
+    public void rewindIsDisabledByDefault() {
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(10, false), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+
+        assertFalse(driver.stackView.rewind());
+        assertEquals(1, driver.adapter.getItem(0));
+    }
+
+    @Test
+    public void rewindBringsBackTheDismissedView() {
+        StackViewDriver driver = newDriver(2);
+        View front = driver.getFrontView();
+        driver.swipe(200);
+        int createCount = driver.adapter.createCount;
+        int bindCount = driver.adapter.bindCount;
+
+        assertTrue(driver.stackView.rewind());
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertSame(front, driver.getFrontView());
+        assertEquals(0, TestAdapter.getBoundItem(front));
+        assertEquals(0, driver.adapter.getItem(0));
+        assertEquals(0, driver.stackView.getRemovedCount());
+        // the previous front card is captured to become the back card
+        assertEquals(createCount, driver.adapter.createCount);
+        assertEquals(bindCount, driver.adapter.bindCount);
+        assertEquals(0.f, driver.getFrontContainer().getTranslationX(), 0.f);
+    }
+
+    @Test
+    public void rewindIsLimitedByTheRewindCount() {
+        StackViewDriver driver = newDriver(2);
+        for (int i = 0; i < 3; i++) {
+            driver.swipe(200);
+        }
+
+        assertTrue(driver.stackView.rewind());
+        driver.idle(StackViewDriver.SETTLE);
+        assertTrue(driver.stackView.rewind());
+        driver.idle(StackViewDriver.SETTLE);
+        assertFalse(driver.stackView.rewind());
+        assertEquals(1, driver.adapter.getItem(0));
+    }
+
+    @Test
+    public void rewindThenSwipeAgain() {
+        StackViewDriver driver = newDriver(1);
+        driver.swipe(200);
+        assertTrue(driver.stackView.rewind());
+        driver.idle(StackViewDriver.SETTLE);
+        driver.swipe(-200);
+
+        assertEquals(1, driver.adapter.getItem(0));
+        assertEquals(1, TestAdapter.getBoundItem(driver.getFrontView()));
+    }
+
+    private static StackViewDriver newDriver(int rewindCount) {
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(10, false), StackView.SnapshotMode.BITMAP);
+        driver.stackView.setRewindCount(rewindCount);
+        return driver;
+    }
+}
@@ -0,0 +1,66 @@
+package net.brach.android.stackview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * A new adapter starts from a clean state: nothing of the previous adapter (views, cached snapshots
+ * of the same ids, pending notifications) is reused.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SetAdapterTest {
+    private StackViewDriver driver;
+
+    @Before
+    public void setUp() {
+        // stable ids: the snapshots of the items 0 and 1 are cached after the swipe
+        driver = new StackViewDriver(new TestAdapter(10, true), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+    }
+
+    @Test
+    public void newAdapterBindsItsCards() {
+        // same ids as the previous adapter
+        TestAdapter adapter = new TestAdapter(10, true);
+        driver.stackView.setAdapter(adapter);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertEquals("front card and back card created", 2, adapter.createCount);
+        assertEquals("front card and back card bound", 2, adapter.bindCount);
+        assertSame(adapter.front, driver.getFrontView());
+        assertEquals(0, TestAdapter.getBoundItem(driver.getFrontView()));
+    }
+
+    @Test
+    public void previousAdapterIsNotListened() {
+        TestAdapter previous = driver.adapter;
+        TestAdapter adapter = new TestAdapter(10, true);
+        driver.stackView.setAdapter(adapter);
+        driver.idle(StackViewDriver.SETTLE);
+        int bindCount = adapter.bindCount;
+
+        previous.notifyItemChangedOnMainThread(0);
+        previous.notifyDataSetChanged();
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertEquals(bindCount, adapter.bindCount);
+    }
+
+    @Test
+    public void pendingNotificationsAreDropped() {
+        // notified, not applied before the next frame
+        driver.adapter.notifyItemRangeChanged(0, 2, true);
+        TestAdapter adapter = new TestAdapter(10, true);
+        driver.stackView.setAdapter(adapter);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertEquals("front card and back card bound once", 2, adapter.bindCount);
+    }
+}
@@ -0,0 +1,32 @@
+package net.brach.android.stackview;
+
+import android.content.Context;
+import android.view.accessibility.AccessibilityManager;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+
+/**
+ * AccessibilityManager shared by the views, as on a device.
+ *
+ * The default shadow creates a manager per call: every touch event would allocate one.
+ */
+@Implements(AccessibilityManager.class)
+public class SingleAccessibilityManager extends ShadowAccessibilityManager {
+    private static AccessibilityManager instance;
+
+    @Implementation
+    public static AccessibilityManager getInstance(Context context) throws Exception {
+        if (instance == null) {
+            instance = ShadowAccessibilityManager.getInstance(context);
+        }
+        return instance;
+    }
+
+    @Resetter
+    public static void reset() {
+        instance = null;
+    }
+}
@@ -0,0 +1,52 @@
+package net.brach.android.stackview;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Up to 5 cards behind the front card, snapshot once then only shifted by the swipes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StackDepthTest {
+    private static final int ALL_POSITIONS = (1 << 6) - 1;
+
+    @Test
+    public void sixCardsAreBound() {
+        StackViewDriver driver = newDriver("6");
+
+        assertEquals("front card and 5 snapshots", 6, driver.adapter.bindCount);
+        assertEquals(ALL_POSITIONS, driver.adapter.boundPositions);
+    }
+
+    @Test
+    public void depthIsLimitedToSixCards() {
+        StackViewDriver driver = newDriver("9");
+
+        assertEquals(6, driver.adapter.bindCount);
+        assertEquals(ALL_POSITIONS, driver.adapter.boundPositions);
+    }
+
+    @Test
+    public void swipeOnlyShiftsTheStack() {
+        StackViewDriver driver = newDriver("6");
+        for (int i = 0; i < 4; i++) {
+            int bindCount = driver.adapter.bindCount;
+            driver.swipe(200);
+
+            // front card, back card in full resolution and the new deepest card
+            assertTrue("cards bound: " + (driver.adapter.bindCount - bindCount), driver.adapter.bindCount - bindCount <= 3);
+        }
+    }
+
+    private static StackViewDriver newDriver(String depth) {
+        return new StackViewDriver(new TestAdapter(20, false), StackView.SnapshotMode.BITMAP,
+                Robolectric.buildAttributeSet().addAttribute(R.attr.stack_depth, depth).build());
+    }
+}
@@ -0,0 +1,73 @@
+package net.brach.android.stackview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dismiss sequencing of the stack: what is removed, shifted, bound and snapshot.
+ */
+public class StackEngineTest {
+    private final StackEngine engine = new StackEngine(200, 1200, 200, 4);
+
+    @Test
+    public void swipeShiftsOneLevel() {
+        engine.advance(1, 10);
+
+        assertEquals(1, engine.removed);
+        assertTrue(engine.keepDismissed);
+        assertEquals(StackEngine.STACK, engine.nextState);
+        assertEquals(1, engine.shiftCount);
+        assertEquals(0b11, engine.bindLevels);
+        // only the deepest card is new
+        assertEquals(0b1000, engine.snapshotLevels);
+    }
+
+    @Test
+    public void skipShiftsEveryRemovedLevel() {
+        engine.advance(2, 10);
+
+        assertEquals(2, engine.removed);
+        assertFalse(engine.keepDismissed);
+        assertEquals(2, engine.shiftCount);
+        assertEquals(0b1100, engine.snapshotLevels);
+    }
+
+    @Test
+    public void longSkipReplacesTheWholeStack() {
+        engine.advance(6, 10);
+
+        assertEquals(3, engine.shiftCount);
+        assertEquals(0b1100, engine.snapshotLevels);
+    }
+
+    @Test
+    public void shortStackSnapshotsOnlyItsItems() {
+        engine.advance(1, 4);
+
+        assertEquals(StackEngine.STACK, engine.nextState);
+        // 3 items left: no fourth card
+        assertEquals(0, engine.snapshotLevels);
+    }
+
+    @Test
+    public void lastCardsBindOnlyTheFront() {
+        engine.advance(1, 2);
+
+        assertEquals(StackEngine.SINGLE, engine.nextState);
+        assertEquals(0, engine.shiftCount);
+        assertEquals(0b1, engine.bindLevels);
+        assertEquals(0, engine.snapshotLevels);
+    }
+
+    @Test
+    public void emptyDeckBindsNothing() {
+        engine.advance(3, 2);
+
+        assertEquals(2, engine.removed);
+        assertEquals(StackEngine.EMPTY, engine.nextState);
+        assertEquals(0, engine.bindLevels);
+    }
+}
@@ -0,0 +1,87 @@
+package net.brach.android.stackview;
+
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trace sections of the StackView: disabled by default, enabled at runtime from Jelly Bean MR2.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StackTraceTest {
+
+    @After
+    public void tearDown() {
+        StackView.setTraceEnabled(false);
+    }
+
+    @Test
+    public void traceIsDisabledByDefault() {
+        assertFalse(StackTrace.isEnabled());
+        assertEquals(0, StackTrace.beginAsync(StackTrace.DISMISS));
+    }
+
+    @Test
+    public void traceIsEnabledAtRuntime() {
+        StackView.setTraceEnabled(true);
+        assertTrue(StackTrace.isEnabled());
+
+        int first = StackTrace.beginAsync(StackTrace.DISMISS);
+        int second = StackTrace.beginAsync(StackTrace.DISMISS);
+        assertNotEquals(0, first);
+        assertNotEquals(first, second);
+        StackTrace.endAsync(StackTrace.DISMISS, second);
+        StackTrace.endAsync(StackTrace.DISMISS, first);
+
+        StackView.setTraceEnabled(false);
+        assertFalse(StackTrace.isEnabled());
+    }
+
+    @Test
+    public void sectionEndsAsBegun() {
+        assertFalse(StackTrace.beginSection(StackTrace.FILL_FRONT));
+
+        StackView.setTraceEnabled(true);
+        boolean traced = StackTrace.beginSection(StackTrace.FILL_FRONT);
+        assertTrue(traced);
+        // disabled inside the section: still ended
+        StackView.setTraceEnabled(false);
+        StackTrace.endSection(traced);
+    }
+
+    @Test
+    public void traceNeedsJellyBeanMr2() {
+        // the sandbox of Robolectric for Jelly Bean MR1 does not load on this JDK
+        int sdkInt = Build.VERSION.SDK_INT;
+        ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.JELLY_BEAN_MR1);
+        try {
+            StackView.setTraceEnabled(true);
+        } finally {
+            ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", sdkInt);
+        }
+
+        assertFalse(StackTrace.isEnabled());
+        assertEquals(0, StackTrace.beginAsync(StackTrace.DISMISS));
+    }
+
+    @Test
+    public void tracedSwipe() {
+        StackView.setTraceEnabled(true);
+        StackViewDriver driver = new StackViewDriver(new TestAdapter(10, false), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+
+        assertEquals(1, driver.adapter.getItem(0));
+        assertEquals(1, TestAdapter.getBoundItem(driver.getFrontView()));
+    }
+}
@@ -0,0 +1,179 @@
+package net.brach.android.stackview;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.sun.management.ThreadMXBean;
+
+import org.robolectric.Robolectric;
+import org.robolectric.Shadows;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StackView in a resumed Activity, swiped with scripted touch events.
+ *
+ * The main looper of Robolectric is advanced frame by frame: the layout passes, the snapshots,
+ * the animations and the metrics of the StackView run as on a device (without hardware acceleration).
+ * The metrics of every swipe are copied once reported, the bytes allocated by a swipe are measured on demand.
+ */
+class StackViewDriver implements StackView.OnSwipeMetricsListener {
+    static final long FRAME = 16;
+    // dismiss animation, next cards bound and snapshot, metrics reported
+    static final long SETTLE = 1000;
+    private static final int MOVES = 8;
+
+    final Activity activity;
+    final StackView stackView;
+    final TestAdapter adapter;
+    private ViewGroup frontContainer;
+
+    int reportCount;
+    int layoutPassCount;
+    int requestLayoutCount;
+    int createViewCount;
+    int bindViewCount;
+    int bitmapAllocationCount;
+
+    /**
+     * @param adapter adapter of the StackView
+     * @param snapshotMode snapshot mode of the StackView
+     */
+    StackViewDriver(TestAdapter adapter, StackView.SnapshotMode snapshotMode) {
+        this(adapter, snapshotMode, null);
+    }
+
+    /**
+     * @param adapter adapter of the StackView
+     * @param snapshotMode snapshot mode of the StackView
+     * @param attrs attributes of the StackView, null for the default ones
+     */
+    StackViewDriver(TestAdapter adapter, StackView.SnapshotMode snapshotMode, AttributeSet attrs) {
+        // paused by a previous driver of the test: the activity would not be attached
+        Robolectric.getForegroundThreadScheduler().unPause();
+        this.activity = Robolectric.setupActivity(Activity.class);
+        // the posted frames only run when 'idle' advances the clock
+        Robolectric.getForegroundThreadScheduler().pause();
+        this.adapter = adapter;
+        this.stackView = new StackView(activity, attrs);
+        stackView.setSnapshotMode(snapshotMode);
+        stackView.setOnSwipeMetricsListener(this, 1.f);
+        activity.setContentView(stackView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        // the window of Robolectric is never made visible
+        Object attachInfo = ReflectionHelpers.getField(stackView, "mAttachInfo");
+        ReflectionHelpers.setField(attachInfo, "mWindowVisibility", View.VISIBLE);
+        stackView.setAdapter(adapter);
+        idle(SETTLE);
+    }
+
+    /**
+     * Run the main looper.
+     *
+     * @param millis duration
+     */
+    void idle(long millis) {
+        for (long time = 0; time < millis; time += FRAME) {
+            Robolectric.getForegroundThreadScheduler().advanceBy(FRAME, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Drag the front card horizontally then release it, one move per frame, and let everything settle.
+     *
+     * @param dx horizontal distance
+     */
+    void swipe(float dx) {
+        long downTime = down();
+        for (int i = 1; i <= MOVES; i++) {
+            idle(FRAME);
+            move(downTime, dx * i / MOVES);
+        }
+        idle(FRAME);
+        up(downTime, dx);
+        idle(SETTLE);
+    }
+
+    /**
+     * Swipe and measure the bytes allocated by the test thread meanwhile: the StackView, the scripted events
+     * and Robolectric (the main looper runs on the test thread).
+     *
+     * @param dx horizontal distance
+     *
+     * @return the number of bytes allocated.
+     */
+    long measureSwipe(float dx) {
+        // the messages recycled by Robolectric stay in the queue, each swipe would walk a longer one
+        if (Robolectric.getForegroundThreadScheduler().size() == 0) {
+            Shadows.shadowOf(Looper.getMainLooper().getQueue()).reset();
+        }
+        long start = getAllocatedBytes();
+        swipe(dx);
+        return getAllocatedBytes() - start;
+    }
+
+    /**
+     * @return the down time of the gesture.
+     */
+    long down() {
+        long downTime = SystemClock.uptimeMillis();
+        touch(downTime, MotionEvent.ACTION_DOWN, 0);
+        return downTime;
+    }
+
+    void move(long downTime, float dx) {
+        touch(downTime, MotionEvent.ACTION_MOVE, dx);
+    }
+
+    void up(long downTime, float dx) {
+        touch(downTime, MotionEvent.ACTION_UP, dx);
+    }
+
+    /**
+     * @return the card view in the front card.
+     */
+    View getFrontView() {
+        return StackView.RecycledViewPool.findView(getFrontContainer());
+    }
+
+    /**
+     * @return the front card, found from the first front card bound.
+     */
+    ViewGroup getFrontContainer() {
+        if (frontContainer == null) {
+            frontContainer = (ViewGroup) adapter.front.getParent();
+        }
+        return frontContainer;
+    }
+
+    @Override
+    public void onSwipeMetrics(SwipeMetrics metrics) {
+        reportCount++;
+        layoutPassCount = metrics.getLayoutPassCount();
+        requestLayoutCount = metrics.getRequestLayoutCount();
+        createViewCount = metrics.getCreateViewCount();
+        bindViewCount = metrics.getBindViewCount();
+        bitmapAllocationCount = metrics.getBitmapAllocationCount();
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void touch(long downTime, int action, float dx) {
+        ViewGroup frontContainer = getFrontContainer();
+        float x = frontContainer.getWidth() / 2 + dx;
+        float y = frontContainer.getHeight() / 2;
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        frontContainer.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
@@ -0,0 +1,72 @@
+package net.brach.android.stackview;
+
+import android.util.LruCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A change notified from any thread only records the stale cached snapshots: they are evicted
+ * on the main thread, on the next frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StaleSnapshotTest {
+    private StackViewDriver driver;
+    private LruCache<Long, ?> cache;
+
+    @Before
+    public void setUp() {
+        // stable ids: the snapshots of the items 0 and 1 are cached after the swipe
+        driver = new StackViewDriver(new TestAdapter(10, true), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+        cache = ReflectionHelpers.getField(driver.stackView, "snapshotCache");
+        assertTrue(cache.snapshot().containsKey(1L));
+    }
+
+    @Test
+    public void changedItemIsEvictedOnTheMainThread() throws InterruptedException {
+        // item 1, the front card
+        notifyFromWorker(new Runnable() {
+            @Override
+            public void run() {
+                driver.adapter.notifyItemChanged(0);
+            }
+        });
+        assertTrue("evicted by the worker", cache.snapshot().containsKey(1L));
+
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertFalse(cache.snapshot().containsKey(1L));
+        assertTrue("not changed", cache.snapshot().containsKey(0L));
+    }
+
+    @Test
+    public void changedRangeEvictsAllOnTheMainThread() throws InterruptedException {
+        notifyFromWorker(new Runnable() {
+            @Override
+            public void run() {
+                driver.adapter.notifyItemRangeChanged(0, 2, false);
+            }
+        });
+        assertTrue("evicted by the worker", cache.snapshot().containsKey(0L));
+
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertFalse(cache.snapshot().containsKey(0L));
+        assertFalse(cache.snapshot().containsKey(1L));
+    }
+
+    private static void notifyFromWorker(Runnable notification) throws InterruptedException {
+        Thread worker = new Thread(notification);
+        worker.start();
+        worker.join();
+    }
+}
@@ -0,0 +1,99 @@
+package net.brach.android.stackview;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Work budgets of a steady state swipe: once the pools are warm, a swipe binds the next front card
+ * and snapshots the next back card, nothing more.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SwipeBudgetTest {
+    private static final int WARM_UP_SWIPES = 4;
+    private static final int SWIPES = 8;
+
+    /** front card and back card snapshot **/
+    private static final int MAX_BINDS = 2;
+    /** advance with the ghost card shown, snapshot of the back card, ghost card hidden **/
+    private static final int MAX_LAYOUT_PASSES = 3;
+    private static final int MAX_REQUEST_LAYOUTS = 4;
+    /** bytes allocated by the test thread, Robolectric included (JDK 8): one more drawable per swipe goes over **/
+    private static final long MAX_SWIPE_BYTES = 184400;
+
+    private StackViewDriver driver;
+
+    @Before
+    public void setUp() {
+        driver = new StackViewDriver(new TestAdapter(100, false), StackView.SnapshotMode.BITMAP);
+        for (int i = 0; i < WARM_UP_SWIPES; i++) {
+            driver.swipe(i % 2 == 0 ? 200 : -200);
+        }
+    }
+
+    @Test
+    public void swipeStaysInBudget() {
+        for (int i = 0; i < SWIPES; i++) {
+            int reportCount = driver.reportCount;
+            driver.swipe(i % 2 == 0 ? 200 : -200);
+
+            assertEquals("swipe reported", reportCount + 1, driver.reportCount);
+            assertEquals("views created", 0, driver.createViewCount);
+            assertTrue("cards bound: " + driver.bindViewCount, driver.bindViewCount <= MAX_BINDS);
+            assertEquals("bitmaps allocated", 0, driver.bitmapAllocationCount);
+            assertTrue("layout passes: " + driver.layoutPassCount, driver.layoutPassCount <= MAX_LAYOUT_PASSES);
+            assertTrue("layout requests: " + driver.requestLayoutCount, driver.requestLayoutCount <= MAX_REQUEST_LAYOUTS);
+        }
+    }
+
+    @Test
+    public void swipeAllocatesInBudget() {
+        long bytes = Long.MAX_VALUE;
+        for (int i = 0; i < SWIPES; i++) {
+            // the lightest swipe: the compiler and the garbage collector allocate on their own at times
+            bytes = Math.min(bytes, driver.measureSwipe(i % 2 == 0 ? 200 : -200));
+        }
+        assertTrue("bytes allocated: " + bytes, bytes <= MAX_SWIPE_BYTES);
+    }
+
+    @Test
+    public void swipeRemovesOneItem() {
+        int first = driver.adapter.getItem(0);
+        int count = driver.adapter.getItemCount();
+        driver.swipe(200);
+
+        assertEquals(count - 1, driver.adapter.getItemCount());
+        assertEquals(first + 1, TestAdapter.getBoundItem(driver.getFrontView()));
+    }
+
+    @Test
+    public void dragRequestsNoLayout() {
+        long downTime = driver.down();
+        assertFalse(driver.stackView.isLayoutRequested());
+        for (int i = 1; i <= 10; i++) {
+            driver.idle(StackViewDriver.FRAME);
+            driver.move(downTime, i * 20);
+            assertFalse("layout requested by move " + i, driver.stackView.isLayoutRequested());
+        }
+        driver.up(downTime, 200);
+    }
+
+    @Test
+    public void settledDragBindsNothing() {
+        int createCount = driver.adapter.createCount;
+        int bindCount = driver.adapter.bindCount;
+        // released before the swipe distance: the card goes back to its place
+        driver.swipe(20);
+
+        assertEquals(createCount, driver.adapter.createCount);
+        assertEquals(bindCount, driver.adapter.bindCount);
+        assertEquals(0.f, driver.getFrontContainer().getTranslationX(), 0.f);
+    }
+}
@@ -0,0 +1,50 @@
+package net.brach.android.stackview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Jank tally of a swipe: the frames missed by the long frames and those whose metrics were dropped.
+ */
+public class SwipeMetricsTest {
+    private static final long FRAME = 16666667;
+
+    private final SwipeMetrics metrics = new SwipeMetrics();
+
+    @Before
+    public void setUp() {
+        metrics.reset(FRAME, true);
+    }
+
+    @Test
+    public void longFramesCountTheMissedFrames() {
+        metrics.addFrame(FRAME, false);
+        metrics.addFrame(3 * FRAME, false);
+        metrics.addFrame(FRAME + 1, true);
+
+        assertEquals(2, metrics.getDragFrameCount());
+        assertEquals(1, metrics.getDismissFrameCount());
+        assertEquals(3, metrics.getDroppedFrameCount());
+    }
+
+    @Test
+    public void droppedMetricsAreMissedFrames() {
+        metrics.addFrame(FRAME, false);
+        metrics.addDroppedFrames(2);
+
+        assertEquals(1, metrics.getDragFrameCount());
+        assertEquals(2, metrics.getDroppedFrameCount());
+    }
+
+    @Test
+    public void resetClearsTheTally() {
+        metrics.addFrame(3 * FRAME, true);
+        metrics.addDroppedFrames(1);
+        metrics.reset(FRAME, true);
+
+        assertEquals(0, metrics.getDismissFrameCount());
+        assertEquals(0, metrics.getDroppedFrameCount());
+    }
+}
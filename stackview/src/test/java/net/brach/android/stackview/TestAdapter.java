@@ -0,0 +1,149 @@
+package net.brach.android.stackview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter of numbered items displayed in fixed size cards, counting the creates, the binds and the draws.
+ */
+class TestAdapter extends StackView.Adapter {
+    static final int CARD_WIDTH = 300;
+    static final int CARD_HEIGHT = 400;
+
+    private final ArrayList<Integer> items;
+    private final ArrayList<Integer> removed;
+    private final boolean stableIds;
+    private final List<CardContent> views;
+    private int next;
+
+    int createCount;
+    int bindCount;
+    // positions bound (bit 0 for 'FIRST', bit 1 for 'SECOND'...)
+    int boundPositions;
+    // last view bound as the front card
+    View front;
+
+    /**
+     * @param count number of items
+     * @param stableIds true to identify the items by their number
+     */
+    TestAdapter(int count, boolean stableIds) {
+        this.items = new ArrayList<>(count);
+        this.removed = new ArrayList<>();
+        this.stableIds = stableIds;
+        this.views = new ArrayList<>();
+        add(count);
+    }
+
+    /**
+     * Add items after the last one (not notified).
+     *
+     * @param count number of items
+     */
+    void add(int count) {
+        for (int i = 0; i < count; i++) {
+            items.add(next++);
+        }
+    }
+
+    /**
+     * @param position item position
+     *
+     * @return the number of the item.
+     */
+    int getItem(int position) {
+        return items.get(position);
+    }
+
+    /**
+     * @param view bound card view
+     *
+     * @return the number of the item bound to the view.
+     */
+    static int getBoundItem(View view) {
+        return (Integer) view.getTag();
+    }
+
+    /**
+     * @return the number of draws of the created views (Robolectric only draws in software: snapshots and captures).
+     */
+    int getDrawCount() {
+        int drawCount = 0;
+        for (CardContent view : views) {
+            drawCount += view.drawCount;
+        }
+        return drawCount;
+    }
+
+    @Override
+    public View onCreateView(ViewGroup parent, Position position) {
+        createCount++;
+        CardContent view = new CardContent(parent.getContext());
+        view.setLayoutParams(new FrameLayout.LayoutParams(CARD_WIDTH, CARD_HEIGHT));
+        views.add(view);
+        return view;
+    }
+
+    @Override
+    public void onBindView(View view, Position position) {
+        bindCount++;
+        boundPositions |= 1 << position.value;
+        view.setTag(items.get(position.value));
+        if (position == Position.FIRST) {
+            front = view;
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return items.get(position);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return stableIds;
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public void remove() {
+        removed.add(items.remove(0));
+    }
+
+    @Override
+    public boolean restore() {
+        if (removed.isEmpty()) {
+            return false;
+        }
+        items.add(0, removed.remove(removed.size() - 1));
+        return true;
+    }
+
+    /**
+     * Card view counting its draws (e.g. by the snapshots).
+     */
+    static class CardContent extends View {
+        int drawCount;
+
+        CardContent(Context context) {
+            super(context);
+        }
+
+        // the shadow of 'draw' never calls 'onDraw'
+        @Override
+        public void draw(Canvas canvas) {
+            drawCount++;
+            super.draw(canvas);
+        }
+    }
+}
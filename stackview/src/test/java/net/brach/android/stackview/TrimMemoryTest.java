@@ -0,0 +1,79 @@
+package net.brach.android.stackview;
+
+import android.content.ComponentCallbacks2;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The memory released on the trim levels: the caches at any time, the cards on screen only once hidden.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TrimMemoryTest {
+    /** full resolution snapshot of the back card (depth 2) **/
+    private static final long BACK_BYTES = TestAdapter.CARD_WIDTH * TestAdapter.CARD_HEIGHT * 4;
+
+    private StackViewDriver driver;
+
+    @Before
+    public void setUp() {
+        driver = new StackViewDriver(new TestAdapter(20, true), StackView.SnapshotMode.BITMAP);
+        driver.swipe(200);
+        driver.swipe(200);
+    }
+
+    @Test
+    public void lowMemoryKeepsTheVisibleCards() {
+        assertTrue("cached and pooled snapshots", driver.stackView.getRetainedBytes() > BACK_BYTES);
+
+        RuntimeEnvironment.application.onLowMemory();
+
+        assertEquals(BACK_BYTES, driver.stackView.getRetainedBytes());
+    }
+
+    @Test
+    public void completeTrimWhileVisibleKeepsTheVisibleCards() {
+        RuntimeEnvironment.application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertEquals(BACK_BYTES, driver.stackView.getRetainedBytes());
+        int bindCount = driver.adapter.bindCount;
+        driver.idle(StackViewDriver.SETTLE);
+        assertEquals("nothing to snapshot again", bindCount, driver.adapter.bindCount);
+    }
+
+    @Test
+    public void trimKeepsASharedPool() {
+        LruBitmapPool shared = new LruBitmapPool((int) (4 * BACK_BYTES));
+        driver.stackView.setBitmapPool(shared);
+        driver.swipe(200);
+
+        driver.stackView.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertTrue("evicted snapshots pooled", shared.size() > 0);
+    }
+
+    @Test
+    public void trimWhileHiddenReleasesTheCardsUntilVisible() {
+        ViewGroup parent = (ViewGroup) driver.stackView.getParent();
+        parent.removeView(driver.stackView);
+
+        driver.stackView.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, driver.stackView.getRetainedBytes());
+
+        int bindCount = driver.adapter.bindCount;
+        parent.addView(driver.stackView);
+        driver.idle(StackViewDriver.SETTLE);
+
+        assertEquals("back card snapshot again", bindCount + 1, driver.adapter.bindCount);
+        assertEquals(BACK_BYTES, driver.stackView.getRetainedBytes());
+    }
+}